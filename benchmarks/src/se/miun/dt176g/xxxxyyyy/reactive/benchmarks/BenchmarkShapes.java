@@ -0,0 +1,94 @@
+package se.miun.dt176g.xxxxyyyy.reactive.benchmarks;
+
+import se.miun.dt176g.xxxxyyyy.reactive.FreehandShape;
+import se.miun.dt176g.xxxxyyyy.reactive.LineShape;
+import se.miun.dt176g.xxxxyyyy.reactive.OvalShape;
+import se.miun.dt176g.xxxxyyyy.reactive.RectangleShape;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+
+import java.awt.*;
+import java.util.Random;
+
+/**
+ * <h1>BenchmarkShapes</h1>
+ * Creates the Shapes used by the benchmarks, spread over a canvas the size of the application window.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public final class BenchmarkShapes {
+    public static final int CANVAS_WIDTH = 1200;
+    public static final int CANVAS_HEIGHT = 900;
+    public static final int FREEHAND_POINTS = 200;
+
+    /**
+     * The kinds of Shapes in the application.
+     */
+    public enum Kind { RECTANGLE, OVAL, LINE, FREEHAND }
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private BenchmarkShapes() {
+    }
+
+    /**
+     * Creates a Shape of a given kind at a random position.
+     * @param kind is the kind of Shape.
+     * @param random is the source of the positions.
+     * @param id is the id of the Shape.
+     * @return the Shape.
+     */
+    public static Shape create(Kind kind, Random random, long id) {
+        Color color = new Color(random.nextInt(0xFFFFFF));
+        int thickness = 1 + random.nextInt(8);
+        int x = random.nextInt(CANVAS_WIDTH);
+        int y = random.nextInt(CANVAS_HEIGHT);
+        Point start = new Point(x, y);
+        Point end = new Point(x + random.nextInt(200) - 100, y + random.nextInt(200) - 100);
+        Shape shape;
+        switch (kind) {
+            case RECTANGLE:
+                RectangleShape rectangle = new RectangleShape(color, thickness);
+                rectangle.setStartPoint(start);
+                rectangle.setEndPoint(end);
+                shape = rectangle;
+                break;
+            case OVAL:
+                OvalShape oval = new OvalShape(color, thickness);
+                oval.setStartPoint(start);
+                oval.setEndPoint(end);
+                shape = oval;
+                break;
+            case LINE:
+                LineShape line = new LineShape(color, thickness);
+                line.setStartPoint(start);
+                line.setEndPoint(end);
+                shape = line;
+                break;
+            default:
+                // A stroke wandering a few pixels per point, like a mouse drag.
+                FreehandShape freehand = new FreehandShape(color, thickness);
+                for (int i = 0; i < FREEHAND_POINTS; i++) {
+                    freehand.addPoint(x, y);
+                    x += random.nextInt(9) - 4;
+                    y += random.nextInt(9) - 4;
+                }
+                shape = freehand;
+                break;
+        }
+        shape.setId(id);
+        return shape;
+    }
+
+    /**
+     * Creates a Shape of a random kind at a random position.
+     * @param random is the source of the kinds and positions.
+     * @param id is the id of the Shape.
+     * @return the Shape.
+     */
+    public static Shape create(Random random, long id) {
+        Kind[] kinds = Kind.values();
+        return create(kinds[random.nextInt(kinds.length)], random, id);
+    }
+}
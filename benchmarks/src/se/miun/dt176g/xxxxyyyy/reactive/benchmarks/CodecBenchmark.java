@@ -0,0 +1,134 @@
+package se.miun.dt176g.xxxxyyyy.reactive.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameDecoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameEncoder;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>CodecBenchmark</h1>
+ * Measures the time to encode and decode one Shape of each kind with the binary frame codec, with
+ * Java serialization as the baseline it replaced. The size of the encoded Shape is reported as the
+ * "bytes" counter.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({"RECTANGLE", "OVAL", "LINE", "FREEHAND"})
+    public BenchmarkShapes.Kind kind;
+
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final FrameDecoder decoder = new FrameDecoder();
+    private Shape shape;
+    private byte[] frame;
+    private byte[] serialized;
+
+    /**
+     * Size of the encoded Shape, reported next to the time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long bytes;
+    }
+
+    /**
+     * Creates the Shape and its encoded forms.
+     * @throws IOException if serializing fails.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        shape = BenchmarkShapes.create(kind, new Random(42), 1234567);
+        frame = encoder.encode(shape);
+        serialized = serialize(shape);
+    }
+
+    /**
+     * Encodes the Shape into a frame.
+     * @param size is where the size of the frame is reported.
+     * @return the frame.
+     */
+    @Benchmark
+    public byte[] encode(Size size) {
+        byte[] encoded = encoder.encode(shape);
+        size.bytes = encoded.length;
+        return encoded;
+    }
+
+    /**
+     * Decodes the Shape from a frame.
+     * @return the Shape.
+     * @throws IOException if the frame is malformed.
+     */
+    @Benchmark
+    public Object decode() throws IOException {
+        return decoder.decode(frame);
+    }
+
+    /**
+     * Encodes the Shape with an ObjectOutputStream.
+     * @param size is where the size of the serialized Shape is reported.
+     * @return the serialized Shape.
+     * @throws IOException if serializing fails.
+     */
+    @Benchmark
+    public byte[] serializeBaseline(Size size) throws IOException {
+        byte[] bytes = serialize(shape);
+        size.bytes = bytes.length;
+        return bytes;
+    }
+
+    /**
+     * Decodes the Shape with an ObjectInputStream.
+     * @return the Shape.
+     * @throws IOException if deserializing fails.
+     * @throws ClassNotFoundException if the class of the Shape is missing.
+     */
+    @Benchmark
+    public Object deserializeBaseline() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * Serializes a Shape with a stream of its own, as each message was sent before the binary codec.
+     * @param shape is the Shape.
+     * @return the serialized Shape.
+     * @throws IOException if serializing fails.
+     */
+    private static byte[] serialize(Shape shape) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(shape);
+        }
+        return bytes.toByteArray();
+    }
+}
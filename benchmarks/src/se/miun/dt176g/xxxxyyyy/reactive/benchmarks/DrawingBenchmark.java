@@ -0,0 +1,123 @@
+package se.miun.dt176g.xxxxyyyy.reactive.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se.miun.dt176g.xxxxyyyy.reactive.Drawing;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.ShapeStore;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>DrawingBenchmark</h1>
+ * Measures the time of adding Shapes from four threads at once, to a bare ShapeStore and to a Drawing, which also
+ * maps the id of each Shape to its place in the store and, when indexed, puts its bounds in the spatial index.
+ * Every iteration adds the same Shapes to a new store and drawing, so each operation is one Shape added.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Threads(4)
+public class DrawingBenchmark {
+    private static final int SHAPES_PER_THREAD = 100_000;
+
+    /**
+     * The store and drawings shared by the threads, new for every iteration.
+     */
+    @State(Scope.Benchmark)
+    public static class Target {
+        ShapeStore store;
+        Drawing drawing;
+        Drawing indexedDrawing;
+
+        /**
+         * Creates an empty store and empty drawings.
+         */
+        @Setup(Level.Iteration)
+        public void setUp() {
+            store = new ShapeStore();
+            drawing = new Drawing(false);
+            indexedDrawing = new Drawing(true);
+        }
+    }
+
+    /**
+     * The Shapes added by one thread, with ids no other thread uses.
+     */
+    @State(Scope.Thread)
+    public static class Shapes {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        final Shape[] shapes = new Shape[SHAPES_PER_THREAD];
+
+        /**
+         * Creates the Shapes of the thread.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            int thread = THREADS.incrementAndGet();
+            Random random = new Random(thread);
+            for (int i = 0; i < shapes.length; i++) {
+                shapes[i] = BenchmarkShapes.create(BenchmarkShapes.Kind.LINE, random, Shape.idOf(thread, i + 1));
+            }
+        }
+    }
+
+    /**
+     * Appends the Shapes of the thread to the store.
+     * @param target is the store.
+     * @param shapes is the Shapes of the thread.
+     * @param blackhole consumes the ordinals.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SHAPES_PER_THREAD)
+    public void store(Target target, Shapes shapes, Blackhole blackhole) {
+        for (Shape shape : shapes.shapes) {
+            blackhole.consume(target.store.add(shape));
+        }
+    }
+
+    /**
+     * Adds the Shapes of the thread to the drawing without an index.
+     * @param target is the drawing.
+     * @param shapes is the Shapes of the thread.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SHAPES_PER_THREAD)
+    public void drawing(Target target, Shapes shapes) {
+        for (Shape shape : shapes.shapes) {
+            target.drawing.addShape(shape);
+        }
+    }
+
+    /**
+     * Adds the Shapes of the thread to the indexed drawing.
+     * @param target is the drawing.
+     * @param shapes is the Shapes of the thread.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SHAPES_PER_THREAD)
+    public void indexedDrawing(Target target, Shapes shapes) {
+        for (Shape shape : shapes.shapes) {
+            target.indexedDrawing.addShape(shape);
+        }
+    }
+}
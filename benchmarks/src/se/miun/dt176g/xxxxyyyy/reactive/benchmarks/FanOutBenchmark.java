@@ -0,0 +1,200 @@
+package se.miun.dt176g.xxxxyyyy.reactive.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameEncoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameInputStream;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameOutputStream;
+import se.miun.dt176g.xxxxyyyy.reactive.JoinRoom;
+import se.miun.dt176g.xxxxyyyy.reactive.MessageBatch;
+import se.miun.dt176g.xxxxyyyy.reactive.NioServer;
+import se.miun.dt176g.xxxxyyyy.reactive.OverflowPolicy;
+import se.miun.dt176g.xxxxyyyy.reactive.Server;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>FanOutBenchmark</h1>
+ * Measures how many Shapes per second a headless server relays from one client to N other clients in the
+ * same room, over loopback. Each operation is one Shape, sent in bursts which are waited for until every
+ * client has received them, so the queues never overflow.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+    private static final int BURST = 100;
+    private static final String ROOM = "benchmark";
+
+    @Param({"1", "8", "32"})
+    public int clients;
+
+    @Param({"blocking", "nio"})
+    public String engine;
+
+    private Server server;
+    private Socket senderSocket;
+    private FrameOutputStream sender;
+    private final List<Socket> receiverSockets = new ArrayList<>();
+    private final List<Thread> receiverThreads = new ArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private final List<byte[]> burst = new ArrayList<>();
+    private long expected;
+
+    /**
+     * Starts a headless server without a journal, connects the clients and waits until all have joined.
+     * @throws IOException if connecting fails.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        System.setProperty(Constants.JOURNAL_PROPERTY, "");
+        server = "nio".equals(engine)
+                ? new NioServer(OverflowPolicy.DROP_OLDEST, Constants.OUTBOUND_QUEUE_CAPACITY, true)
+                : new Server(OverflowPolicy.DROP_OLDEST, Constants.OUTBOUND_QUEUE_CAPACITY, true);
+        server.startServer();
+
+        FrameEncoder encoder = new FrameEncoder();
+        senderSocket = connect();
+        sender = join(senderSocket, encoder);
+        AtomicLong[] perReceiver = new AtomicLong[clients];
+        for (int i = 0; i < clients; i++) {
+            Socket socket = connect();
+            join(socket, encoder);
+            AtomicLong count = new AtomicLong();
+            perReceiver[i] = count;
+            Thread thread = new Thread(() -> receive(socket, count), "receiver-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            receiverSockets.add(socket);
+            receiverThreads.add(thread);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < BURST; i++) {
+            burst.add(encoder.encode(BenchmarkShapes.create(BenchmarkShapes.Kind.LINE, random, i + 1)));
+        }
+        // Clients only receive what is sent after they have joined, so probe until every one of them got something.
+        for (AtomicLong count : perReceiver) {
+            while (count.get() == 0) {
+                sender.writeFrame(burst.get(0));
+                sender.flush();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+            }
+        }
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+        expected = received.get();
+    }
+
+    /**
+     * Sends a burst of Shapes and waits until every client has received all of them.
+     * @throws IOException if sending fails.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void relay() throws IOException {
+        for (byte[] frame : burst) {
+            sender.writeFrame(frame);
+        }
+        sender.flush();
+        expected += (long) BURST * clients;
+        while (received.get() < expected) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Disconnects the clients and shuts the server down.
+     * @throws IOException if closing a socket fails.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        senderSocket.close();
+        for (Socket socket : receiverSockets) {
+            socket.close();
+        }
+        server.shutDown();
+    }
+
+    /**
+     * Connects to the server, retrying until it accepts connections.
+     * @return the socket.
+     * @throws IOException if connecting fails.
+     */
+    private static Socket connect() throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Socket socket = new Socket(Constants.ADDRESS, Constants.PORT);
+                socket.setTcpNoDelay(true);
+                return socket;
+            } catch (ConnectException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+        }
+    }
+
+    /**
+     * Sends the stream header and joins the benchmark room.
+     * @param socket is the socket.
+     * @param encoder is the encoder.
+     * @return the stream to send frames on.
+     * @throws IOException if sending fails.
+     */
+    private static FrameOutputStream join(Socket socket, FrameEncoder encoder) throws IOException {
+        FrameOutputStream out = new FrameOutputStream(socket.getOutputStream());
+        out.writeFrame(encoder.encode(new JoinRoom(ROOM)));
+        out.flush();
+        return out;
+    }
+
+    /**
+     * Reader loop of a client, counting the Shapes it receives until the socket is closed.
+     * @param socket is the socket.
+     * @param count is the count of this client.
+     */
+    private void receive(Socket socket, AtomicLong count) {
+        try {
+            FrameInputStream in = new FrameInputStream(socket.getInputStream());
+            while (true) {
+                Object message = in.readMessage();
+                List<?> messages = message instanceof MessageBatch
+                        ? ((MessageBatch) message).getMessages() : List.of(message);
+                long shapes = messages.stream().filter(m -> m instanceof Shape).count();
+                count.addAndGet(shapes);
+                received.addAndGet(shapes);
+            }
+        } catch (IOException e) {
+            // Closed by the tear down.
+        }
+    }
+}
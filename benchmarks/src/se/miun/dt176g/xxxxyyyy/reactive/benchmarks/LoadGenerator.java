@@ -0,0 +1,334 @@
+package se.miun.dt176g.xxxxyyyy.reactive.benchmarks;
+
+import org.HdrHistogram.Histogram;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameDecoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameInputStream;
+import se.miun.dt176g.xxxxyyyy.reactive.NioServer;
+import se.miun.dt176g.xxxxyyyy.reactive.Server;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.StrokeSegment;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.awt.*;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <h1>LoadGenerator</h1>
+ * Simulates many drawing clients against a server over loopback and reports the throughput, the time it took
+ * each client to join and the end-to-end latency of every broadcast, from being sent until another client has
+ * received it. The clients draw generated freehand strokes, or replay the strokes of a recorded journal.
+ * By default a headless server is started in the same process, set reactive.load.embedded=false to use a
+ * server that is already running. Configured with system properties:
+ * <ul>
+ *     <li>reactive.load.clients: the number of clients, 100 by default.</li>
+ *     <li>reactive.load.rate: the messages sent per second by each client, 30 by default.</li>
+ *     <li>reactive.load.warmupSeconds and reactive.load.durationSeconds: 5 and 30 by default.</li>
+ *     <li>reactive.load.room: the room the clients join, "load" by default.</li>
+ *     <li>reactive.load.seedShapes: Shapes drawn before the clients join, so they get a snapshot, 1000 by default.</li>
+ *     <li>reactive.load.recording: a journal file to replay instead of generating strokes.</li>
+ * </ul>
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class LoadGenerator {
+    private static final String PREFIX = "reactive.load.";
+    private static final int POINTS_PER_SEGMENT = 4;
+    private static final int SEGMENTS_PER_STROKE = 30;
+    private static final int STEP = 6; // The longest step of the random walk drawing a stroke, in pixels.
+    private static final long JOIN_TIMEOUT_S = 60;
+    private static final long DRAIN_MS = 1000; // How long to wait for messages in flight after sending stops.
+
+    /**
+     * Runs the load and prints the report.
+     * @param args aren't used.
+     * @throws Exception if the server can't be reached or the recording can't be read.
+     */
+    public static void main(String[] args) throws Exception {
+        int clientCount = Integer.getInteger(PREFIX + "clients", 100);
+        int rate = Integer.getInteger(PREFIX + "rate", 30);
+        int warmupSeconds = Integer.getInteger(PREFIX + "warmupSeconds", 5);
+        int durationSeconds = Integer.getInteger(PREFIX + "durationSeconds", 30);
+        String room = System.getProperty(PREFIX + "room", "load");
+        int seedShapes = Integer.getInteger(PREFIX + "seedShapes", 1000);
+        String recording = System.getProperty(PREFIX + "recording");
+        boolean embedded = Boolean.parseBoolean(System.getProperty(PREFIX + "embedded", "true"));
+
+        Server server = null;
+        if (embedded) {
+            System.setProperty("java.awt.headless", "true");
+            System.setProperty(Constants.HEADLESS_PROPERTY, "true");
+            if (System.getProperty(Constants.JOURNAL_PROPERTY) == null) {
+                System.setProperty(Constants.JOURNAL_PROPERTY, "");
+            }
+            server = "nio".equals(System.getProperty(Constants.SERVER_ENGINE_PROPERTY)) ? new NioServer() : new Server();
+            server.startServer();
+        }
+        List<byte[]> recorded = recording == null ? null : readRecording(recording);
+
+        if (seedShapes > 0) {
+            seed(room, seedShapes);
+        }
+        SyntheticClient.Tracker tracker = new SyntheticClient.Tracker(clientCount - 1);
+        List<SyntheticClient> clients = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            Supplier<Object> source = recorded == null ? generatedStrokes(i) : replay(recorded, i);
+            SyntheticClient client = new SyntheticClient(tracker, source);
+            connect(client, room);
+            clients.add(client);
+        }
+        Histogram joinTimes = new Histogram(3);
+        if (seedShapes > 0) {
+            for (SyntheticClient client : clients) {
+                if (!client.awaitJoined(JOIN_TIMEOUT_S, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("A client didn't receive the snapshot of the room");
+                }
+                joinTimes.recordValue(TimeUnit.NANOSECONDS.toMicros(client.getJoinNanos()));
+            }
+        } else {
+            // Without a snapshot there is nothing telling when a client has joined.
+            Thread.sleep(1000);
+        }
+
+        // Spread the clients over the period, so they don't all send at the same instant.
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        ScheduledExecutorService senders = new ScheduledThreadPoolExecutor(
+                Math.min(clientCount, Runtime.getRuntime().availableProcessors()), task -> {
+                    Thread thread = new Thread(task, "synthetic-sender");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        for (int i = 0; i < clientCount; i++) {
+            senders.scheduleAtFixedRate(clients.get(i)::sendNext, periodNanos * i / clientCount, periodNanos,
+                    TimeUnit.NANOSECONDS);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        tracker.setMeasuring(true);
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        senders.shutdown();
+        senders.awaitTermination(5, TimeUnit.SECONDS);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        Thread.sleep(DRAIN_MS);
+        tracker.setMeasuring(false);
+
+        Histogram latency = new Histogram(3);
+        for (SyntheticClient client : clients) {
+            client.close();
+            latency.add(client.getLatency());
+        }
+        if (server != null) {
+            server.shutDown();
+        }
+        report(clientCount, rate, elapsed, tracker, seedShapes > 0 ? joinTimes : null, latency);
+        System.exit(0);
+    }
+
+    /**
+     * Connects a client, retrying until the server accepts connections.
+     * @param client is the client.
+     * @param room is the name of the room to join.
+     * @throws IOException if connecting fails for another reason than the server not listening yet.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static void connect(SyntheticClient client, String room) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                client.connect(room);
+                return;
+            } catch (ConnectException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * Draws Shapes in the room from a separate client, so the clients joining it get a snapshot to time.
+     * @param room is the name of the room.
+     * @param count is the number of Shapes.
+     * @throws InterruptedException if interrupted while waiting for the server.
+     * @throws IOException if connecting fails.
+     */
+    private static void seed(String room, int count) throws IOException, InterruptedException {
+        Random random = new Random(0);
+        long[] id = {0};
+        SyntheticClient seeder = new SyntheticClient(new SyntheticClient.Tracker(0),
+                () -> BenchmarkShapes.create(random, ++id[0]));
+        connect(seeder, room);
+        for (int i = 0; i < count; i++) {
+            seeder.sendNext();
+        }
+        seeder.close();
+        Thread.sleep(500);
+    }
+
+    /**
+     * Reads the frames of a recorded journal, leaving out everything but Shapes and StrokeSegments.
+     * @param path is the path of the journal.
+     * @return the frames.
+     * @throws IOException if the journal can't be read.
+     */
+    private static List<byte[]> readRecording(String path) throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder();
+        try (FrameInputStream in = new FrameInputStream(new FileInputStream(path))) {
+            while (true) {
+                byte[] frame = in.readFrame();
+                Object message = decoder.decode(frame);
+                if (message instanceof Shape || message instanceof StrokeSegment) {
+                    frames.add(frame);
+                }
+            }
+        } catch (EOFException e) {
+            // End of the recording.
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("The recording has no Shapes or strokes: " + path);
+        }
+        return frames;
+    }
+
+    /**
+     * Creates the id of a Shape drawn by a client, unique among all clients.
+     * @param client is the index of the client, below 2^15 so the id fits the latency keys.
+     * @param sequence is the number of the Shape within the client, below 2^32.
+     * @return the id.
+     */
+    private static long idOf(int client, long sequence) {
+        return Shape.idOf(client + 1, (int) sequence);
+    }
+
+    /**
+     * Creates a source of freehand strokes drawn as random walks, each sent as a BEGIN, a number of APPENDs and an END.
+     * @param client is the index of the client.
+     * @return the source.
+     */
+    private static Supplier<Object> generatedStrokes(int client) {
+        Random random = new Random(client);
+        int[] points = new int[POINTS_PER_SEGMENT * 2];
+        return new Supplier<Object>() {
+            private long sequence = 0;
+            private int segment = 0;
+            private int x;
+            private int y;
+
+            @Override
+            public Object get() {
+                long id = idOf(client, sequence);
+                if (segment == 0) {
+                    segment++;
+                    x = random.nextInt(BenchmarkShapes.CANVAS_WIDTH);
+                    y = random.nextInt(BenchmarkShapes.CANVAS_HEIGHT);
+                    return new StrokeSegment(StrokeSegment.Kind.BEGIN, id, new Color(random.nextInt(0xFFFFFF)),
+                            1 + random.nextInt(5), new int[] {x, y});
+                }
+                if (segment > SEGMENTS_PER_STROKE) {
+                    segment = 0;
+                    sequence++;
+                    return StrokeSegment.end(id);
+                }
+                segment++;
+                for (int i = 0; i < POINTS_PER_SEGMENT; i++) {
+                    x += random.nextInt(STEP * 2 + 1) - STEP;
+                    y += random.nextInt(STEP * 2 + 1) - STEP;
+                    points[i * 2] = x;
+                    points[i * 2 + 1] = y;
+                }
+                return StrokeSegment.append(id, points, POINTS_PER_SEGMENT);
+            }
+        };
+    }
+
+    /**
+     * Creates a source replaying a recording over and over. Each client decodes its own copy of the messages and
+     * gives them new ids, so no two clients or rounds draw the same Shape.
+     * @param frames are the recorded frames.
+     * @param client is the index of the client.
+     * @return the source.
+     */
+    private static Supplier<Object> replay(List<byte[]> frames, int client) {
+        FrameDecoder decoder = new FrameDecoder();
+        Map<Long, Long> ids = new HashMap<>(); // Recorded id to new id, for the current round.
+        return new Supplier<Object>() {
+            private int next = 0;
+            private long sequence = 0;
+
+            @Override
+            public Object get() {
+                if (next == frames.size()) {
+                    next = 0;
+                    ids.clear();
+                }
+                Object message;
+                try {
+                    message = decoder.decode(frames.get(next++));
+                } catch (StreamCorruptedException e) {
+                    throw new UncheckedIOException(e); // Already decoded once when it was read.
+                }
+                if (message instanceof Shape) {
+                    Shape shape = (Shape) message;
+                    shape.setId(idOf(client, sequence++));
+                    return shape;
+                }
+                StrokeSegment segment = (StrokeSegment) message;
+                Long id = ids.computeIfAbsent(segment.getShapeId(), recorded -> idOf(client, sequence++));
+                if (segment.getKind() == StrokeSegment.Kind.END) {
+                    ids.remove(segment.getShapeId());
+                }
+                return new StrokeSegment(segment.getKind(), id, segment.getColor(), segment.getThickness(),
+                        segment.getPoints());
+            }
+        };
+    }
+
+    /**
+     * Prints the results of a run.
+     * @param clientCount is the number of clients.
+     * @param rate is the messages sent per second by each client.
+     * @param elapsed is how long was measured, in seconds.
+     * @param tracker is the tracker of the clients.
+     * @param joinTimes are the join times in microseconds, or null if they weren't measured.
+     * @param latency are the broadcast latencies in microseconds.
+     */
+    private static void report(int clientCount, int rate, double elapsed, SyntheticClient.Tracker tracker,
+                               Histogram joinTimes, Histogram latency) {
+        System.out.printf("Clients: %d, sending %d messages/s each, measured for %.1f s%n", clientCount, rate, elapsed);
+        System.out.printf("Sent: %.0f messages/s, delivered: %.0f messages/s (%.1f%% of expected), failed sends: %d%n",
+                tracker.getSent() / elapsed, tracker.getDelivered() / elapsed,
+                100.0 * tracker.getDelivered() / Math.max(1, tracker.getSent() * (clientCount - 1)),
+                tracker.getFailures());
+        if (joinTimes != null) {
+            print("Join time", joinTimes);
+        }
+        print("Broadcast latency", latency);
+    }
+
+    /**
+     * Prints the percentiles of a histogram of microseconds in milliseconds.
+     * @param name is the name of the measurement.
+     * @param histogram is the histogram.
+     */
+    private static void print(String name, Histogram histogram) {
+        System.out.printf("%s (ms): p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f (%d samples)%n", name,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0, histogram.getTotalCount());
+    }
+}
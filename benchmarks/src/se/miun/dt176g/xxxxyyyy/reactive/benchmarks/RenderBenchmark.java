@@ -0,0 +1,145 @@
+package se.miun.dt176g.xxxxyyyy.reactive.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.miun.dt176g.xxxxyyyy.reactive.ConnectionHandler;
+import se.miun.dt176g.xxxxyyyy.reactive.Drawing;
+import se.miun.dt176g.xxxxyyyy.reactive.DrawingPanel;
+import se.miun.dt176g.xxxxyyyy.reactive.MainFrame;
+import se.miun.dt176g.xxxxyyyy.reactive.Menu;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.ShapeUpdate;
+import se.miun.dt176g.xxxxyyyy.reactive.StrokeSegment;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RenderBenchmark</h1>
+ * Measures repainting the whole canvas offscreen with 1k, 10k and 100k Shapes: rasterizing every Shape again,
+ * as after a resize or clear, repainting from the cached layer, and drawing the Shapes directly without the panel.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int shapes;
+
+    private Drawing drawing;
+    private DrawingPanel panel;
+    private BufferedImage canvas;
+    private Graphics2D graphics;
+
+    /**
+     * Fills a drawing with Shapes of every kind and creates a panel and an offscreen canvas for it.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        drawing = new Drawing();
+        Random random = new Random(42);
+        for (int i = 0; i < shapes; i++) {
+            drawing.addShape(BenchmarkShapes.create(random, i + 1));
+        }
+        panel = new DrawingPanel(drawing, new Menu(), new NoConnection());
+        panel.setDoubleBuffered(false);
+        panel.setSize(BenchmarkShapes.CANVAS_WIDTH, BenchmarkShapes.CANVAS_HEIGHT);
+        canvas = new BufferedImage(BenchmarkShapes.CANVAS_WIDTH, BenchmarkShapes.CANVAS_HEIGHT,
+                BufferedImage.TYPE_INT_ARGB);
+        graphics = canvas.createGraphics();
+        panel.paint(graphics); // Fills the cached layer.
+    }
+
+    /**
+     * Releases the graphics of the canvas.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    /**
+     * Repaints the panel after discarding its cached layer, so every Shape is rasterized.
+     * @return the canvas.
+     */
+    @Benchmark
+    public BufferedImage fullRepaint() {
+        panel.invalidateCommittedLayer();
+        panel.paint(graphics);
+        return canvas;
+    }
+
+    /**
+     * Repaints the panel from its cached layer.
+     * @return the canvas.
+     */
+    @Benchmark
+    public BufferedImage cachedRepaint() {
+        panel.paint(graphics);
+        return canvas;
+    }
+
+    /**
+     * Draws every Shape directly onto the canvas.
+     * @return the canvas.
+     */
+    @Benchmark
+    public BufferedImage drawShapes() {
+        for (Shape shape : drawing.getShapes()) {
+            shape.draw(graphics);
+        }
+        return canvas;
+    }
+
+    /**
+     * Connection handler of a panel that isn't connected to anything.
+     */
+    private static class NoConnection implements ConnectionHandler {
+        @Override
+        public void clearEvent() {
+        }
+
+        @Override
+        public void handleReceivedObject(Object receivedObject) {
+        }
+
+        @Override
+        public void setMainFrame(MainFrame mainFrame) {
+        }
+
+        @Override
+        public void shutDown() {
+        }
+
+        @Override
+        public void sendShape(Shape shape) {
+        }
+
+        @Override
+        public void sendStrokeSegment(StrokeSegment segment) {
+        }
+
+        @Override
+        public void sendShapeUpdate(ShapeUpdate update) {
+        }
+    }
+}
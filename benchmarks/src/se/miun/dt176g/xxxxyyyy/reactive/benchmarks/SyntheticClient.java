@@ -0,0 +1,309 @@
+package se.miun.dt176g.xxxxyyyy.reactive.benchmarks;
+
+import org.HdrHistogram.Histogram;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameEncoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameInputStream;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameOutputStream;
+import se.miun.dt176g.xxxxyyyy.reactive.JoinRoom;
+import se.miun.dt176g.xxxxyyyy.reactive.MessageBatch;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.SnapshotChunk;
+import se.miun.dt176g.xxxxyyyy.reactive.StrokeSegment;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * <h1>SyntheticClient</h1>
+ * A drawing client without a GUI, used by the {@link LoadGenerator}. It sends the messages of a source when
+ * asked to, and a reader thread records how long each message broadcast by another client took to arrive.
+ * Messages are matched by the id of their Shape and their position within it, since each client's messages are
+ * relayed in the order they were sent, so the shared {@link Tracker} knows when every message was sent.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class SyntheticClient {
+    private static final long HIGHEST_LATENCY_US = TimeUnit.MINUTES.toMicros(1);
+    private final Tracker tracker;
+    private final Supplier<Object> source;
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final Histogram latency = new Histogram(HIGHEST_LATENCY_US, 3); // Only used by the reader thread.
+    private final Map<Long, Integer> sentPositions = new HashMap<>(); // Only used by the sending thread.
+    private final CountDownLatch joined = new CountDownLatch(1);
+    private Socket socket;
+    private FrameOutputStream out;
+    private Thread readerThread;
+    private volatile long joinNanos = -1;
+
+    /**
+     * Constructor which sets where the messages to send come from.
+     * @param tracker is the tracker shared by all clients.
+     * @param source gives the next message to send.
+     */
+    public SyntheticClient(Tracker tracker, Supplier<Object> source) {
+        this.tracker = tracker;
+        this.source = source;
+    }
+
+    /**
+     * Connects to the server, joins a room and starts the reader thread.
+     * @param room is the name of the room.
+     * @throws IOException if connecting fails.
+     */
+    public void connect(String room) throws IOException {
+        long start = System.nanoTime();
+        socket = new Socket(Constants.ADDRESS, Constants.PORT);
+        socket.setTcpNoDelay(true);
+        out = new FrameOutputStream(socket.getOutputStream());
+        out.writeFrame(encoder.encode(new JoinRoom(room)));
+        out.flush();
+        readerThread = new Thread(() -> receive(start), "synthetic-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Waits until the snapshot of the room has been received.
+     * @param timeout is the longest time to wait.
+     * @param unit is the unit of the timeout.
+     * @return true if the snapshot was received.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitJoined(long timeout, TimeUnit unit) throws InterruptedException {
+        return joined.await(timeout, unit);
+    }
+
+    /**
+     * Getter for the time from connecting until the snapshot of the room was received.
+     * @return the join time in nanoseconds, or -1 if no snapshot was received.
+     */
+    public long getJoinNanos() {
+        return joinNanos;
+    }
+
+    /**
+     * Getter for the broadcast latencies recorded while measuring, to be read once the client is closed.
+     * @return the latencies in microseconds.
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Sends the next message of the source, registering it with the tracker first.
+     * Must not be called by more than one thread at a time.
+     */
+    public void sendNext() {
+        Object message = source.get();
+        long id = message instanceof Shape ? ((Shape) message).getId() : ((StrokeSegment) message).getShapeId();
+        int position = sentPositions.merge(id, 1, Integer::sum) - 1;
+        if (message instanceof Shape || ((StrokeSegment) message).getKind() == StrokeSegment.Kind.END) {
+            sentPositions.remove(id);
+        }
+        tracker.sent(Tracker.key(id, position));
+        try {
+            out.writeFrame(encoder.encode(message));
+            out.flush();
+        } catch (IOException e) {
+            tracker.failed();
+        }
+    }
+
+    /**
+     * Closes the connection and waits for the reader thread to stop.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void close() throws InterruptedException {
+        try {
+            out.writeMessage(Constants.CLIENT_SHUT_DOWN);
+            out.flush();
+            socket.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+        readerThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Reader loop, recording the join time and the latency of every broadcast message until the socket is closed.
+     * @param start is when the client started connecting.
+     */
+    private void receive(long start) {
+        Map<Long, Integer> positions = new HashMap<>();
+        try {
+            FrameInputStream in = new FrameInputStream(socket.getInputStream());
+            while (true) {
+                Object received = in.readMessage();
+                List<Object> messages = received instanceof MessageBatch
+                        ? ((MessageBatch) received).getMessages() : Collections.singletonList(received);
+                for (Object message : messages) {
+                    if (message instanceof SnapshotChunk) {
+                        if (((SnapshotChunk) message).isLast()) {
+                            joinNanos = System.nanoTime() - start;
+                            joined.countDown();
+                        }
+                    } else if (message instanceof Shape) {
+                        record(Tracker.key(((Shape) message).getId(), 0));
+                    } else if (message instanceof StrokeSegment) {
+                        StrokeSegment segment = (StrokeSegment) message;
+                        int position = positions.merge(segment.getShapeId(), 1, Integer::sum) - 1;
+                        if (segment.getKind() == StrokeSegment.Kind.END) {
+                            positions.remove(segment.getShapeId());
+                        }
+                        record(Tracker.key(segment.getShapeId(), position));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Closed.
+        }
+    }
+
+    /**
+     * Records the latency of a received message.
+     * @param key is the key of the message.
+     */
+    private void record(long key) {
+        long sentAt = tracker.received(key);
+        if (sentAt >= 0 && tracker.isMeasuring()) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentAt);
+            latency.recordValue(Math.min(micros, HIGHEST_LATENCY_US));
+        }
+    }
+
+    /**
+     * <h1>Tracker</h1>
+     * When each message in flight was sent, and how many clients have yet to receive it, shared by all clients.
+     * Also counts the messages sent and received while measuring.
+     */
+    public static class Tracker {
+        private final Map<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+        private final int receivers;
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile boolean measuring = false;
+
+        /**
+         * Constructor which sets how many clients receive each message.
+         * @param receivers is the number of clients receiving each message.
+         */
+        public Tracker(int receivers) {
+            this.receivers = receivers;
+        }
+
+        /**
+         * Combines the id of a Shape and the position of a message within it into a key.
+         * @param id is the id of the Shape, which must be below 2^47.
+         * @param position is the position of the message, only the lowest 16 bits are used.
+         * @return the key.
+         */
+        static long key(long id, int position) {
+            return id << 16 | (position & 0xFFFF);
+        }
+
+        /**
+         * Registers a message that is about to be sent.
+         * @param key is the key of the message.
+         */
+        void sent(long key) {
+            if (receivers > 0) {
+                inFlight.put(key, new InFlight(System.nanoTime(), receivers));
+            }
+            if (measuring) {
+                sent.increment();
+            }
+        }
+
+        /**
+         * Registers that a client received a message.
+         * @param key is the key of the message.
+         * @return when the message was sent, or -1 if it isn't tracked.
+         */
+        long received(long key) {
+            InFlight message = inFlight.get(key);
+            if (message == null) {
+                return -1;
+            }
+            if (message.remaining.decrementAndGet() == 0) {
+                inFlight.remove(key);
+            }
+            if (measuring) {
+                delivered.increment();
+            }
+            return message.sentAt;
+        }
+
+        /**
+         * Counts a message that couldn't be sent.
+         */
+        void failed() {
+            failures.increment();
+        }
+
+        /**
+         * Starts or stops counting and recording latencies.
+         * @param measuring is true while measuring.
+         */
+        public void setMeasuring(boolean measuring) {
+            this.measuring = measuring;
+        }
+
+        /**
+         * Checks if latencies are recorded.
+         * @return true while measuring.
+         */
+        public boolean isMeasuring() {
+            return measuring;
+        }
+
+        /**
+         * Getter for the number of messages sent while measuring.
+         * @return the number of messages.
+         */
+        public long getSent() {
+            return sent.sum();
+        }
+
+        /**
+         * Getter for the number of messages received by a client while measuring.
+         * @return the number of deliveries.
+         */
+        public long getDelivered() {
+            return delivered.sum();
+        }
+
+        /**
+         * Getter for the number of messages that couldn't be sent.
+         * @return the number of failures.
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * When a message was sent and how many clients have yet to receive it.
+         */
+        private static class InFlight {
+            private final long sentAt;
+            private final AtomicInteger remaining;
+
+            InFlight(long sentAt, int remaining) {
+                this.sentAt = sentAt;
+                this.remaining = new AtomicInteger(remaining);
+            }
+        }
+    }
+}
@@ -8,32 +8,63 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
 
 import javax.swing.*;
+import java.awt.Rectangle;
 import java.io.*;
 import java.net.ConnectException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <h1>Client</h1>
  * Represents the client-side of the application,establishing a connection to the server and
- * communicating with it. Sets up a client GUI.
+ * communicating with it. Sets up a client GUI. If the connection is lost the drawing is kept and the client
+ * reconnects, resuming from the last sequence number it got so only the messages it missed are sent again.
+ * Shapes finished while not in the room are kept and sent once it is joined again.
  * @author 	Emma Pesjak
  * @version 1.0
  * @since 	2023-10-06
  */
 public class Client implements ConnectionHandler, Serializable {
     private static final long serialVersionUID = 1L;
-    private Socket socket;
+    private volatile Socket socket;
     private MainFrame mainFrame;
     private DrawingPanel drawingPanel;
     private Drawing drawing;
     private static final Menu menu = new Menu();
     private Client client;
-    private ObjectOutputStream outputStream;
-    private ObjectInputStream inputStream;
+    private volatile PeerConnection connection;
+    private FrameInputStream inputStream;
+    private final FrameEncoder frameEncoder = new FrameEncoder();
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+    private final ShapeIdSource shapeIds = new ShapeIdSource();
+    private final ByteArrayOutputStream snapshotBuffer = new ByteArrayOutputStream();
+    private final LoopDispatcher edtDispatcher = new LoopDispatcher(); // Applies received messages on the EDT.
     private Observable<Object> incomingDataObservable;
     private Observer<Object> outgoingDataObserver;
-    private boolean shouldTerminateIncomingDataObservable = false;
+    private volatile boolean shouldTerminateIncomingDataObservable = false;
+    // Set by the reader thread when the server says it shuts down, the status says so until connected again.
+    private volatile boolean serverShutDown = false;
+    // The last resume point received, updated by the reader thread as the messages before it are staged.
+    private volatile long history = ResumePoint.NO_HISTORY;
+    private volatile long lastSequence = OutboundQueue.NO_SEQUENCE;
+    private volatile long session = ResumePoint.NO_SESSION; // Handed out by the room, sent back when resuming.
+    // Used on the EDT, what is drawn here is only sent as is while the room is joined.
+    private boolean joined = false;
+    private final Set<Long> streamed = new HashSet<>(); // Shapes begun since joining, so their updates are sent.
+    private final Map<Long, Shape> drawingHere = new LinkedHashMap<>(); // Shapes being drawn here, by id.
+    private final List<Object> offline = new ArrayList<>(); // Shapes finished and clears done while not joined.
+    private final Set<Integer> ownClientIds = new HashSet<>(); // The client ids handed out to this client.
+    // The ids of the shapes kept here that the room has a version of, found in the snapshot received when joining
+    // again, or null if the room was resumed instead.
+    private Set<Long> knownToRoom = null;
 
     /**
      * Main starting point of the application for a client.
@@ -47,6 +78,14 @@ public class Client implements ConnectionHandler, Serializable {
         SwingUtilities.invokeLater(() -> frame.setVisible(true));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ShapeIdSource getShapeIds() {
+        return shapeIds;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -62,22 +101,15 @@ public class Client implements ConnectionHandler, Serializable {
         client = this;
         Observable.create(emitter -> {
             try {
-                socket = new Socket(Constants.ADDRESS, Constants.PORT);
+                socket = new Socket(Constants.ADDRESS, serverPort());
 
                 // Set up the frame.
                 drawing = new Drawing();
                 drawingPanel = new DrawingPanel(drawing, menu, client);
                 mainFrame.setUpDrawing(drawingPanel);
                 mainFrame.setStatusMessage(Constants.CLIENT_CONNECT_MSG);
-
-                // Set up streams.
-                outputStream = new ObjectOutputStream(socket.getOutputStream());
-                inputStream = new ObjectInputStream(socket.getInputStream());
-
-                // Set up observer/observables.
-                incomingDataObservable = createIncomingDataObservable();
                 outgoingDataObserver = createOutgoingDataObserver();
-                subscribeToIncomingData();
+                startConnection();
             } catch (ConnectException ce) {
                 mainFrame.setUpFailedToConnect();
             } catch (IOException e) {
@@ -91,13 +123,108 @@ public class Client implements ConnectionHandler, Serializable {
         );
     }
 
+    /**
+     * Finds the port of the server, given by the port system property.
+     * @return the port.
+     */
+    private static int serverPort() {
+        return Integer.getInteger(Constants.PORT_PROPERTY, Constants.PORT);
+    }
+
+    /**
+     * Sets up the streams and the connection of the socket, joins the room and starts reading. The server sends the
+     * messages after the last resume point, or a snapshot of its drawing if it can't resume from there.
+     * @throws IOException if the streams can't be set up.
+     */
+    private void startConnection() throws IOException {
+        snapshotBuffer.reset(); // A snapshot cut off by a lost connection is sent again.
+        FrameOutputStream outputStream = new FrameOutputStream(socket.getOutputStream());
+        inputStream = new FrameInputStream(socket.getInputStream());
+        // Coalesce on overflow, a connection that still can't keep up is closed so the client reconnects.
+        connection = new PeerConnection(socket, outputStream, Constants.OUTBOUND_QUEUE_CAPACITY,
+                OverflowPolicy.COALESCE, this::closeSocket);
+        connection.start();
+        // Join the room first, the server sends what is missing of its drawing once joined.
+        String room = System.getProperty(Constants.ROOM_PROPERTY, Constants.DEFAULT_ROOM);
+        connection.send(OutboundQueue.NO_KEY,
+                frameEncoder.encode(new JoinRoom(room, session, history, lastSequence)));
+
+        incomingDataObservable = createIncomingDataObservable();
+        subscribeToIncomingData();
+    }
+
+    /**
+     * Closes the socket of a connection that failed, so the incoming data observable notices and reconnects.
+     * @param peer is the connection.
+     */
+    private void closeSocket(Peer peer) {
+        try {
+            ((PeerConnection) peer).getSocket().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes a lost connection and starts reconnecting, unless the client is shutting down.
+     * What was never written to the lost connection is taken back and kept with the shapes drawn until the room
+     * is joined again.
+     */
+    private void connectionLost() {
+        if (shouldTerminateIncomingDataObservable) {
+            return;
+        }
+        PeerConnection lost = connection;
+        edtDispatcher.dispatch(() -> {
+            joined = false;
+            streamed.clear();
+            FrameDecoder decoder = new FrameDecoder(); // The reader thread has its own.
+            for (byte[] frame : lost.takeUnsent()) {
+                try {
+                    Object message = decoder.decode(frame);
+                    if (message instanceof MessageBatch) {
+                        ((MessageBatch) message).getMessages().forEach(this::keepOffline);
+                    } else {
+                        keepOffline(message);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        Schedulers.io().scheduleDirect(this::reconnect, Constants.RECONNECT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tries to connect to the server again, and keeps trying until it succeeds or the client shuts down.
+     * The status tells that the client is reconnecting, unless the server said it shut down.
+     */
+    private void reconnect() {
+        if (shouldTerminateIncomingDataObservable) {
+            return;
+        }
+        if (!serverShutDown) {
+            mainFrame.setStatusMessage(Constants.RECONNECT_MSG);
+        }
+        try {
+            socket = new Socket(Constants.ADDRESS, serverPort());
+            serverShutDown = false; // Before reading starts, the new connection may say so again.
+            startConnection();
+            mainFrame.setStatusMessage(Constants.CLIENT_CONNECT_MSG);
+        } catch (IOException e) {
+            Schedulers.io().scheduleDirect(this::reconnect, Constants.RECONNECT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
     /**
      * Subscribes to the incoming data observable to asynchronously handle received objects.
+     * The connection is lost when it completes.
      */
     private void subscribeToIncomingData() {
         incomingDataObservable.subscribe(
                 this::handleReceivedObject,
-                Throwable::printStackTrace
+                Throwable::printStackTrace,
+                this::connectionLost
         );
     }
 
@@ -110,7 +237,11 @@ public class Client implements ConnectionHandler, Serializable {
         return Observable.create(emitter -> {
             try {
                 while (!shouldTerminateIncomingDataObservable) {
-                    Object receivedObject = inputStream.readObject();
+                    byte[] frame = inputStream.readFrame();
+                    long decodeStart = System.nanoTime();
+                    Object receivedObject = frameDecoder.decode(frame);
+                    Metrics.get().record(Metrics.Timing.DECODE, decodeStart);
+                    connection.getMetrics().receivedFrame(frame.length);
                     emitter.onNext(receivedObject);
                 }
             } catch (SocketException se) {
@@ -119,7 +250,7 @@ public class Client implements ConnectionHandler, Serializable {
             } catch (EOFException eo) {
                 // Handle the EOFException when the server disconnects.
                 emitter.onComplete();
-            } catch (IOException | ClassNotFoundException e) {
+            } catch (IOException e) {
                 e.printStackTrace();
             } finally {
                 if (!emitter.isDisposed()) {
@@ -132,6 +263,7 @@ public class Client implements ConnectionHandler, Serializable {
 
     /**
      * Creates an observer for outgoing data to send objects over the network connection.
+     * Objects are queued on the connection, so the caller (often the EDT) never blocks on the socket.
      * @return an observer for outgoing data.
      */
     private Observer<Object> createOutgoingDataObserver() {
@@ -141,12 +273,11 @@ public class Client implements ConnectionHandler, Serializable {
 
             @Override
             public void onNext(@NonNull Object object) {
-                try {
-                    outputStream.writeObject(object);
-                    outputStream.flush();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                long key = OutboundQueue.keyOf(object);
+                long start = System.nanoTime();
+                byte[] frame = frameEncoder.encode(object);
+                Metrics.get().record(Metrics.Timing.ENCODE, start);
+                connection.send(key, frame);
             }
 
             @Override
@@ -164,20 +295,337 @@ public class Client implements ConnectionHandler, Serializable {
      */
     @Override
     public void handleReceivedObject(Object receivedObject) {
-        SwingUtilities.invokeLater(() -> {
-            if (receivedObject instanceof String) {
-                String message = (String) receivedObject;
-                if (message.equals(Constants.CLEAR)) {
-                    drawingPanel.clearDrawing();
-                } else if (message.equals(Constants.SERVER_SHUT_DOWN)) {
-                    mainFrame.removeDrawing();
-                    mainFrame.setStatusMessage(Constants.SERVER_DC);
+        List<Object> messages = receivedObject instanceof MessageBatch
+                ? ((MessageBatch) receivedObject).getMessages() : Collections.singletonList(receivedObject);
+        connection.getMetrics().receivedMessages(messages.size());
+        // The messages are staged for the EDT, a snapshot chunk is handled in between.
+        List<Object> pending = new ArrayList<>();
+        for (Object message : messages) {
+            if (message instanceof SnapshotChunk) {
+                applyLater(pending);
+                pending = new ArrayList<>();
+                handleSnapshotChunk((SnapshotChunk) message);
+            } else if (message instanceof ResumePoint) {
+                // The messages before it are staged, so they are applied before any message sent after resuming.
+                ResumePoint point = (ResumePoint) message;
+                if (!point.isMark()) {
+                    history = point.getHistory();
+                    session = point.getSession();
+                    shapeIds.setClientId(point.getClientId()); // Handed out by the room for this connection.
+                    // Joined once the messages before it are applied, what was drawn meanwhile is sent then.
+                    applyLater(pending);
+                    pending = new ArrayList<>();
+                    edtDispatcher.dispatch(this::rejoined);
+                }
+                lastSequence = point.getSequence();
+            } else {
+                if (Constants.SERVER_SHUT_DOWN.equals(message)) {
+                    serverShutDown = true; // Before the connection is lost, so the status isn't overwritten.
+                }
+                pending.add(message);
+            }
+        }
+        applyLater(pending);
+    }
+
+    /**
+     * Stages received messages to be applied on the EDT, together with the other messages received
+     * within the same frame.
+     * @param messages are the messages.
+     */
+    private void applyLater(List<Object> messages) {
+        if (!messages.isEmpty()) {
+            edtDispatcher.dispatch(() -> messages.forEach(this::applyReceivedObject));
+        }
+    }
+
+    /**
+     * Applies a received message to the drawing. Used on the EDT.
+     * @param receivedObject is the received message.
+     */
+    private void applyReceivedObject(Object receivedObject) {
+        if (isOwnShape(receivedObject)) {
+            // The room only sends back a shape drawn here when it ended the shape after the connection was lost.
+            // The version here is newer, and is sent whole once it is finished.
+            return;
+        }
+        if (receivedObject instanceof String) {
+            String message = (String) receivedObject;
+            if (message.equals(Constants.CLEAR)) {
+                drawingPanel.clearDrawing();
+            } else if (message.equals(Constants.SERVER_SHUT_DOWN)) {
+                mainFrame.setStatusMessage(Constants.SERVER_DC);
+            }
+        } else if (receivedObject instanceof Shape) {
+            Rectangle changed = drawing.finishShape((Shape) receivedObject);
+            if (changed != null) {
+                drawingPanel.repaint(changed);
+            }
+        } else if (receivedObject instanceof ShapeUpdate) {
+            Rectangle changed = drawing.applyShapeUpdate((ShapeUpdate) receivedObject);
+            if (changed != null) {
+                drawingPanel.repaint(changed);
+            }
+        } else if (receivedObject instanceof StrokeSegment) {
+            StrokeSegment segment = (StrokeSegment) receivedObject;
+            FreehandShape stroke = drawing.applyStrokeSegment(segment);
+            if (stroke != null) {
+                drawingPanel.repaintStrokeSegment(stroke, segment);
+            }
+        }
+    }
+
+    /**
+     * Collects the chunks of the snapshot sent by the server when joining. Once the last chunk is received,
+     * the snapshot is decoded off the EDT and applied to the drawing in one go. The snapshot replaces the drawing,
+     * except for the shapes drawn here that the server doesn't have yet.
+     * @param chunk is the received chunk.
+     */
+    private void handleSnapshotChunk(SnapshotChunk chunk) {
+        snapshotBuffer.writeBytes(chunk.getData());
+        if (!chunk.isLast()) {
+            return;
+        }
+        try {
+            List<Object> messages = SnapshotCodec.decode(snapshotBuffer.toByteArray());
+            // Staged like the other messages, so it is applied in the order it was received.
+            edtDispatcher.dispatch(() -> {
+                drawingPanel.clearDrawing();
+                for (Object message : messages) {
+                    if (message instanceof Shape) {
+                        drawing.addShape((Shape) message);
+                    } else if (message instanceof StrokeSegment) {
+                        drawing.applyStrokeSegment((StrokeSegment) message);
+                    } else if (message instanceof ShapeUpdate) {
+                        drawing.applyShapeUpdate((ShapeUpdate) message);
+                    }
                 }
-            } else if (receivedObject instanceof Shape) {
-                drawing.addShape((Shape) receivedObject);
+                knownToRoom = new HashSet<>();
+                for (Shape shape : localShapes()) {
+                    Shape inRoom = drawing.getShape(shape.getId());
+                    if (inRoom != null && isVersionOf(inRoom, shape)) {
+                        knownToRoom.add(shape.getId());
+                    }
+                }
+                keepLocalShapes();
                 drawingPanel.repaint();
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            snapshotBuffer.reset();
+        }
+    }
+
+    /**
+     * Checks if a received message is about a shape drawn here, by the client id the shape was created with.
+     * @param message is the message.
+     * @return true if it is a Shape, StrokeSegment or ShapeUpdate of a shape drawn here.
+     */
+    private boolean isOwnShape(Object message) {
+        long id;
+        if (message instanceof Shape) {
+            id = ((Shape) message).getId();
+        } else if (message instanceof StrokeSegment) {
+            id = ((StrokeSegment) message).getShapeId();
+        } else if (message instanceof ShapeUpdate) {
+            id = ((ShapeUpdate) message).getShapeId();
+        } else {
+            return false;
+        }
+        return ownClientIds.contains(Shape.clientIdOf(id));
+    }
+
+    /**
+     * Checks if a shape in the drawing of the room is an earlier version of a shape drawn here, rather than a shape
+     * of another client that happens to have the same id.
+     * @param inRoom is the shape in the drawing of the room.
+     * @param shape is the shape drawn here.
+     * @return true if it is a version of the shape.
+     */
+    private static boolean isVersionOf(Shape inRoom, Shape shape) {
+        if (inRoom.getClass() != shape.getClass() || !inRoom.getColor().equals(shape.getColor())
+                || inRoom.getThickness() != shape.getThickness()) {
+            return false;
+        }
+        if (shape instanceof FreehandShape) {
+            FreehandShape stroke = (FreehandShape) shape;
+            FreehandShape part = (FreehandShape) inRoom;
+            return part.getPointCount() > 0 && part.getPointCount() <= stroke.getPointCount()
+                    && part.getX(0) == stroke.getX(0) && part.getY(0) == stroke.getY(0);
+        }
+        return ShapeUpdate.getStartPoint(inRoom).equals(ShapeUpdate.getStartPoint(shape));
+    }
+
+    /**
+     * Collects the shapes drawn here that the server doesn't have yet, the ones finished while not joined and the
+     * ones still being drawn. Used on the EDT.
+     * @return the shapes.
+     */
+    private List<Shape> localShapes() {
+        List<Shape> shapes = new ArrayList<>(drawingHere.values());
+        for (Object message : offline) {
+            if (message instanceof Shape) {
+                shapes.add((Shape) message);
             }
-        });
+        }
+        return shapes;
+    }
+
+    /**
+     * Gives new ids to the shapes drawn here that a room, which doesn't know them, could hand out to another
+     * client: the ones created with a client id of an earlier connection. The shapes the room has a version of
+     * keep their ids, so the versions are completed instead of duplicated. Used on the EDT.
+     * @param known are the ids of the shapes the room has a version of.
+     */
+    private void renewUnknownIds(Set<Long> known) {
+        for (Shape shape : localShapes()) {
+            long id = shape.getId();
+            if (known.contains(id) || Shape.clientIdOf(id) == shapeIds.getClientId()) {
+                continue;
+            }
+            drawing.removeShape(id);
+            shape.setId(shapeIds.next());
+            if (drawingHere.remove(id) == null) {
+                drawing.addShape(shape);
+            } else if (shape instanceof FreehandShape) {
+                drawingHere.put(shape.getId(), shape);
+                drawing.beginStroke((FreehandShape) shape);
+            } else {
+                drawingHere.put(shape.getId(), shape);
+                drawing.beginPreview(shape);
+            }
+        }
+    }
+
+    /**
+     * Puts the shapes drawn here that the server doesn't have yet back after the drawing was cleared to apply a
+     * snapshot, or a clear done while not joined. Used on the EDT.
+     */
+    private void keepLocalShapes() {
+        for (Object message : offline) {
+            if (message instanceof Shape) {
+                // Replaces the part of a stroke or preview the room ended when the connection was lost.
+                Shape shape = (Shape) message;
+                drawing.removeShape(shape.getId());
+                drawing.addShape(shape);
+            }
+        }
+        for (Shape shape : drawingHere.values()) {
+            drawing.removeShape(shape.getId());
+            if (shape instanceof FreehandShape) {
+                drawing.beginStroke((FreehandShape) shape);
+            } else {
+                drawing.beginPreview(shape);
+            }
+        }
+    }
+
+    /**
+     * Marks the room as joined and sends what was drawn here while it wasn't, in the order it was drawn.
+     * Used on the EDT, once the messages received before joining are applied.
+     */
+    private void rejoined() {
+        joined = true;
+        streamed.clear();
+        ownClientIds.add(shapeIds.getClientId());
+        if (knownToRoom != null) {
+            // Joined with a snapshot, possibly of a room that was restarted and hands out client ids again.
+            renewUnknownIds(knownToRoom);
+            knownToRoom = null;
+        }
+        if (!offline.isEmpty() && Constants.CLEAR.equals(offline.get(0))) {
+            // Cleared here while not joined, so what was drawn elsewhere meanwhile is cleared too.
+            drawingPanel.clearDrawing();
+            keepLocalShapes();
+            outgoingDataObserver.onNext(Constants.CLEAR);
+        }
+        for (Object message : offline) {
+            if (message instanceof Shape && drawing.getShape(((Shape) message).getId()) == message) {
+                sendWhole((Shape) message);
+            }
+        }
+        offline.clear();
+        drawingPanel.repaint();
+    }
+
+    /**
+     * Keeps a message that couldn't be sent until the room is joined again. A finished shape is kept as it is
+     * in the drawing, and a clear drops what was kept before it. Used on the EDT.
+     * @param message is the message.
+     */
+    private void keepOffline(Object message) {
+        long id;
+        if (Constants.CLEAR.equals(message)) {
+            offline.clear();
+            offline.add(message);
+            return;
+        } else if (message instanceof Shape) {
+            id = ((Shape) message).getId();
+        } else if (message instanceof StrokeSegment
+                && ((StrokeSegment) message).getKind() == StrokeSegment.Kind.END) {
+            id = ((StrokeSegment) message).getShapeId();
+        } else {
+            return; // Strokes and previews are sent whole once finished.
+        }
+        Shape shape = drawing.getShape(id);
+        if (shape != null && !offline.contains(shape)) {
+            offline.add(shape);
+        }
+    }
+
+    /**
+     * Sends a finished shape the server hasn't seen any of on this connection, a stroke with all of its points, under
+     * the id it was drawn with. If the room ended part of it when the connection was lost, that part is completed
+     * with it. Used on the EDT.
+     * @param shape is the shape.
+     */
+    private void sendWhole(Shape shape) {
+        outgoingDataObserver.onNext(shape);
+    }
+
+    /**
+     * Sends a message drawn here, or keeps it until the room is joined again. Updates of shapes begun before
+     * joining are left out, those shapes are sent whole once finished. Used on the EDT.
+     * @param message is the shape, stroke segment, shape update or clear.
+     */
+    private void send(Object message) {
+        long id = OutboundQueue.NO_KEY;
+        boolean begin = false;
+        boolean end = false;
+        if (message instanceof StrokeSegment) {
+            StrokeSegment segment = (StrokeSegment) message;
+            id = segment.getShapeId();
+            begin = segment.getKind() == StrokeSegment.Kind.BEGIN;
+            end = segment.getKind() == StrokeSegment.Kind.END;
+        } else if (message instanceof ShapeUpdate) {
+            id = ((ShapeUpdate) message).getShapeId();
+            begin = ((ShapeUpdate) message).getKind() == ShapeUpdate.Kind.BEGIN;
+        } else if (message instanceof Shape) {
+            id = ((Shape) message).getId();
+            end = true;
+        }
+        if (begin && drawing.getShape(id) != null) {
+            drawingHere.put(id, drawing.getShape(id));
+        } else if (end) {
+            drawingHere.remove(id);
+        }
+
+        if (!joined) {
+            keepOffline(message);
+        } else if (id == OutboundQueue.NO_KEY) {
+            outgoingDataObserver.onNext(message);
+        } else if (begin) {
+            streamed.add(id);
+            outgoingDataObserver.onNext(message);
+        } else if (end && !streamed.remove(id)) {
+            Shape shape = drawing.getShape(id);
+            if (shape != null) {
+                sendWhole(shape);
+            }
+        } else if (streamed.contains(id) || end) {
+            outgoingDataObserver.onNext(message);
+        }
     }
 
     /**
@@ -185,7 +633,23 @@ public class Client implements ConnectionHandler, Serializable {
      */
     @Override
     public void sendShape(Shape shape) {
-        outgoingDataObserver.onNext(shape);
+        send(shape);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendStrokeSegment(StrokeSegment segment) {
+        send(segment);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendShapeUpdate(ShapeUpdate update) {
+        send(update);
     }
 
     /**
@@ -194,7 +658,7 @@ public class Client implements ConnectionHandler, Serializable {
     @Override
     public void clearEvent() {
         drawingPanel.clearDrawing();
-        outgoingDataObserver.onNext(Constants.CLEAR);
+        send(Constants.CLEAR);
     }
 
     /**
@@ -202,17 +666,16 @@ public class Client implements ConnectionHandler, Serializable {
      */
     @Override
     public void shutDown() {
+        // Set the flag to terminate the incoming data observable, and to stop reconnecting.
+        shouldTerminateIncomingDataObservable = true;
         try {
             if (socket != null && !socket.isClosed()) {
                 // Notify the server.
                 outgoingDataObserver.onNext(Constants.CLIENT_SHUT_DOWN);
 
-                // Set the flag to terminate the incoming data observable.
-                shouldTerminateIncomingDataObservable = true;
-
-                // Close the socket and streams.
+                // Close the socket and streams, letting the writer send what is queued first.
                 try {
-                    outputStream.close();
+                    connection.close(true);
                     inputStream.close();
                     socket.close();
                 } catch (SocketException se) {
@@ -15,12 +15,18 @@ public interface ConnectionHandler {
     void clearEvent();
 
     /**
-     * Receives an Object that can be a String for clearing the canvas, that the Server has disconnected, or a
-     * Shape to draw on the canvas.
+     * Receives an Object that can be a String for clearing the canvas, that the Server has disconnected, a
+     * Shape to draw on the canvas, a StrokeSegment of a stroke being drawn, or a ShapeUpdate of a shape being dragged.
      * @param receivedObject is the received object.
      */
     void handleReceivedObject(Object receivedObject);
 
+    /**
+     * Getter for the source of the ids of the Shapes drawn here.
+     * @return the source.
+     */
+    ShapeIdSource getShapeIds();
+
     /**
      * Sets the MainFrame.
      * @param mainFrame is the MainFrame.
@@ -37,4 +43,16 @@ public interface ConnectionHandler {
      * @param shape is the Shape to send.
      */
     void sendShape(Shape shape);
+
+    /**
+     * Sends a segment of a freehand stroke that is still being drawn to the server/clients.
+     * @param segment is the StrokeSegment to send.
+     */
+    void sendStrokeSegment(StrokeSegment segment);
+
+    /**
+     * Sends an update of a shape that is still being dragged to the server/clients.
+     * @param update is the ShapeUpdate to send.
+     */
+    void sendShapeUpdate(ShapeUpdate update);
 }
@@ -0,0 +1,172 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * <h1>ConnectionMetrics</h1>
+ * Counters of the messages and bytes going in and out of one connection, which also add to the totals of
+ * {@link Metrics}. Counting never blocks, the rates are computed when Metrics samples the counters.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ConnectionMetrics implements ConnectionMetricsMXBean {
+    private final String address;
+    private final IntSupplier queueDepth;
+    private final Metrics metrics; // Where the totals are counted, null for the totals themselves.
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final long[] sampled = new long[4]; // The counters at the last sample, in the order of sample().
+    private final double[] rates = new double[4];
+
+    /**
+     * Constructor which sets what the metrics are of, created by {@link Metrics#openConnection}.
+     * @param address is the address of the other end of the connection.
+     * @param queueDepth gives the number of frames in the outbound queue.
+     * @param metrics is where the totals are counted, or null.
+     */
+    ConnectionMetrics(String address, IntSupplier queueDepth, Metrics metrics) {
+        this.address = address;
+        this.queueDepth = queueDepth;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Counts a received frame.
+     * @param bytes is the size of the frame.
+     */
+    public void receivedFrame(int bytes) {
+        bytesIn.add(bytes);
+        if (metrics != null) {
+            metrics.receivedFrame(bytes);
+        }
+    }
+
+    /**
+     * Counts received messages, once the frame they came in is decoded.
+     * @param count is the number of messages.
+     */
+    public void receivedMessages(int count) {
+        messagesIn.add(count);
+        if (metrics != null) {
+            metrics.receivedMessages(count);
+        }
+    }
+
+    /**
+     * Counts a message queued for sending.
+     * @param bytes is the size of its frame.
+     */
+    public void sent(int bytes) {
+        messagesOut.increment();
+        bytesOut.add(bytes);
+        if (metrics != null) {
+            metrics.sent(bytes);
+        }
+    }
+
+    /**
+     * Computes the rates over an interval. Only called by {@link Metrics}.
+     * @param seconds is the length of the interval.
+     */
+    synchronized void sample(double seconds) {
+        long[] current = {messagesIn.sum(), messagesOut.sum(), bytesIn.sum(), bytesOut.sum()};
+        for (int i = 0; i < current.length; i++) {
+            rates[i] = (current[i] - sampled[i]) / seconds;
+            sampled[i] = current[i];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized double getMessagesInPerSecond() {
+        return rates[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized double getMessagesOutPerSecond() {
+        return rates[1];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized double getBytesInPerSecond() {
+        return rates[2];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized double getBytesOutPerSecond() {
+        return rates[3];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("%s in %.1f msg/s %.1f KiB/s, out %.1f msg/s %.1f KiB/s, queue %d", address,
+                getMessagesInPerSecond(), getBytesInPerSecond() / 1024, getMessagesOutPerSecond(),
+                getBytesOutPerSecond() / 1024, getQueueDepth());
+    }
+}
@@ -0,0 +1,72 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>ConnectionMetricsMXBean</h1>
+ * Management interface of the counters of one connection, registered with JMX while the connection is open.
+ * The rates are taken over the last sampling interval of {@link Metrics}.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public interface ConnectionMetricsMXBean {
+
+    /**
+     * Getter for the address of the other end of the connection.
+     * @return the address.
+     */
+    String getAddress();
+
+    /**
+     * Getter for the number of messages received, counting each message of a batch.
+     * @return the number of messages.
+     */
+    long getMessagesIn();
+
+    /**
+     * Getter for the number of messages queued for sending.
+     * @return the number of messages.
+     */
+    long getMessagesOut();
+
+    /**
+     * Getter for the size of the frames received.
+     * @return the number of bytes.
+     */
+    long getBytesIn();
+
+    /**
+     * Getter for the size of the frames queued for sending.
+     * @return the number of bytes.
+     */
+    long getBytesOut();
+
+    /**
+     * Getter for the rate of received messages.
+     * @return the messages per second.
+     */
+    double getMessagesInPerSecond();
+
+    /**
+     * Getter for the rate of messages queued for sending.
+     * @return the messages per second.
+     */
+    double getMessagesOutPerSecond();
+
+    /**
+     * Getter for the rate of received bytes.
+     * @return the bytes per second.
+     */
+    double getBytesInPerSecond();
+
+    /**
+     * Getter for the rate of bytes queued for sending.
+     * @return the bytes per second.
+     */
+    double getBytesOutPerSecond();
+
+    /**
+     * Getter for the number of frames waiting in the outbound queue.
+     * @return the number of frames.
+     */
+    int getQueueDepth();
+}
@@ -1,50 +1,501 @@
 package se.miun.dt176g.xxxxyyyy.reactive;
 
+import java.awt.*;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <h1>Drawing</h1> 
  * Stores an arbitrary number of AbstractShape-objects in
- * a list container.
+ * a lock-free ShapeStore, so shapes can be rendered and copied while others are added.
+ * Shapes are looked up by their id through a ShapeIdMap, which also keeps a shape from being added twice.
  * @author 	Emma Pesjak
  * @version 1.0
  * @since 	2023-10-02
  */
 public class Drawing implements Drawable, Serializable {
 	private static final long serialVersionUID = 1L;
-	private final List<Shape> shapes;
+	private static final int INDEX_CELL_SIZE = 128;
+	private static final int LINEAR_QUERY_LIMIT = 256; // Fewer shapes than this are scanned without the index.
+	private final boolean indexed;
+	// The shapes since the last clear. Clearing swaps in a new generation, so readers never see a half cleared drawing.
+	private volatile Generation generation;
 
 	/**
-	 * Constructor that creates the list container.
+	 * Constructor that creates the shape store and the spatial index.
 	 */
 	public Drawing() {
-		shapes = new ArrayList<>();
+		this(true);
+	}
+
+	/**
+	 * Constructor that creates the shape store, and optionally the spatial index.
+	 * @param indexed is true if region queries should use a spatial index.
+	 */
+	public Drawing(boolean indexed) {
+		this.indexed = indexed;
+		generation = new Generation(indexed);
 	}
 
 	/**
 	 * Clear the list of shapes.
 	 */
 	public void clear() {
-		shapes.clear();
+		generation = new Generation(indexed);
+	}
+
+	/**
+	 * Replaces the shapes with the shapes of another drawing, which is swapped in whole like a clear, so readers
+	 * see either the old shapes or the new ones. The other drawing must not be changed afterwards.
+	 * @param other is the other drawing.
+	 */
+	public void replaceWith(Drawing other) {
+		generation = other.generation;
 	}
 
 	/**
 	 * {@inheritDoc}
+	 * A shape whose id is already in the drawing is ignored.
 	 */
 	@Override
-	public synchronized void addShape(Shape shape) { // Synchronized to avoid concurrency issues!
+	public void addShape(Shape shape) {
 		if (shape != null) {
-			shapes.add(shape);
+			generation.add(shape);
+		}
+	}
+
+	/**
+	 * Getter for the shape with a given id.
+	 * @param id is the id of the shape.
+	 * @return the shape, or null if it isn't in the drawing.
+	 */
+	public Shape getShape(long id) {
+		Generation current = generation;
+		int ordinal = current.ordinalOf(id);
+		return ordinal != ShapeIdMap.ABSENT ? current.shapes.get(ordinal) : null;
+	}
+
+	/**
+	 * Removes the shape with a given id, along with its open stroke or preview.
+	 * @param id is the id of the shape.
+	 * @return the area the shape covered, or null if it wasn't in the drawing.
+	 */
+	public Rectangle removeShape(long id) {
+		Generation current = generation;
+		Shape removed = current.remove(id);
+		if (removed == null) {
+			return null;
+		}
+		current.openStrokes.remove(id);
+		current.openPreviews.remove(id);
+		return removed.getBounds();
+	}
+
+	/**
+	 * Getter for the number of shapes removed, or changed after they were finished, since the drawing was last
+	 * cleared, used for noticing that shapes already rendered are gone or stale.
+	 * @return the number of removed or changed shapes.
+	 */
+	public int getRemovedCount() {
+		return generation.removedCount.get();
+	}
+
+	/**
+	 * Updates the index after the bounds of a shape in the drawing changed.
+	 * @param shape is the changed shape.
+	 */
+	public void shapeChanged(Shape shape) {
+		Generation current = generation;
+		if (current.index == null) {
+			return;
+		}
+		int ordinal = current.ordinalOf(shape.getId());
+		if (ordinal != ShapeIdMap.ABSENT && current.shapes.get(ordinal) == shape) {
+			current.index(ordinal, shape);
+		}
+	}
+
+	/**
+	 * Finds the shapes intersecting an area, in drawing order.
+	 * @param area is the area.
+	 * @return the shapes.
+	 */
+	public List<Shape> query(Rectangle area) {
+		return query(area, 0);
+	}
+
+	/**
+	 * Finds the shapes intersecting an area, in drawing order, starting at a given index in the drawing.
+	 * @param area is the area.
+	 * @param fromIndex is the index of the first shape to consider.
+	 * @return the shapes.
+	 */
+	public List<Shape> query(Rectangle area, int fromIndex) {
+		Generation current = generation;
+		List<Shape> shapes = current.shapes.view();
+		List<Shape> result = new ArrayList<>();
+		if (current.index == null || shapes.size() - fromIndex <= LINEAR_QUERY_LIMIT) {
+			for (int i = fromIndex; i < shapes.size(); i++) {
+				Shape shape = shapes.get(i);
+				if (shape != null && area.intersects(shape.getBounds())) {
+					result.add(shape);
+				}
+			}
+			return result;
+		}
+		int[] ordinals;
+		synchronized (current.index) {
+			ordinals = current.index.query(area);
+		}
+		for (int ordinal : ordinals) {
+			if (ordinal >= fromIndex && ordinal < shapes.size()) {
+				Shape shape = shapes.get(ordinal);
+				if (shape != null && area.intersects(shape.getBounds())) {
+					result.add(shape);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the topmost shape whose bounds contain a point.
+	 * @param point is the point.
+	 * @return the shape, or null if there is none.
+	 */
+	public Shape hitTest(Point point) {
+		List<Shape> candidates = query(new Rectangle(point.x, point.y, 1, 1));
+		for (int i = candidates.size() - 1; i >= 0; i--) {
+			if (candidates.get(i).getBounds().contains(point)) {
+				return candidates.get(i);
+			}
 		}
+		return null;
 	}
 
 	/**
 	 * {@inheritDoc}
+	 * The list is an immutable view of the shapes added so far, it doesn't change when more shapes are added.
+	 * Shapes removed from the drawing are null in the list, so the others keep their indexes.
 	 */
 	@Override
-	public synchronized List<Shape> getShapes() { // Synchronized to avoid concurrency issues!
-		return shapes;
+	public List<Shape> getShapes() {
+		return generation.shapes.view();
+	}
+
+	/**
+	 * Takes an immutable copy of the drawing, used for sending it to a client that joins.
+	 * Strokes still being drawn are copied as BEGIN segments, so later segments apply to them, and shapes still
+	 * being dragged as BEGIN updates, so later moves apply to them. Since these are copies, the drawing can keep
+	 * changing while the snapshot is encoded on another thread.
+	 * @return the Shapes, StrokeSegments and ShapeUpdates of the drawing.
+	 */
+	public List<Object> snapshot() {
+		Generation current = generation;
+		List<Shape> shapes = current.shapes.view();
+		List<Object> copy = new ArrayList<>(shapes.size());
+		for (Shape shape : shapes) {
+			if (shape == null) {
+				continue;
+			}
+			if (current.isOpenStroke(shape)) {
+				copy.add(StrokeSegment.begin((FreehandShape) shape));
+			} else if (current.isOpenPreview(shape)) {
+				copy.add(ShapeUpdate.begin(shape));
+			} else {
+				copy.add(shape);
+			}
+		}
+		return Collections.unmodifiableList(copy);
+	}
+
+	/**
+	 * Adds a stroke that is still being drawn, so stroke segments can be applied to it.
+	 * @param stroke is the stroke.
+	 */
+	public void beginStroke(FreehandShape stroke) {
+		Generation current = generation;
+		current.openStrokes.put(stroke.getId(), stroke);
+		if (!current.add(stroke)) {
+			current.openStrokes.remove(stroke.getId(), stroke);
+		}
+	}
+
+	/**
+	 * Marks all strokes and previews still being drawn as finished, used when no more segments or updates
+	 * will come for them.
+	 */
+	public void endOpenShapes() {
+		Generation current = generation;
+		current.openStrokes.clear();
+		current.openPreviews.clear();
+	}
+
+	/**
+	 * Marks a stroke as finished.
+	 * @param id is the id of the stroke.
+	 */
+	public void endStroke(long id) {
+		generation.openStrokes.remove(id);
+	}
+
+	/**
+	 * Checks if a shape is a stroke that is still being drawn.
+	 * @param shape is the shape.
+	 * @return true if the shape is an open stroke.
+	 */
+	public boolean isOpenStroke(Shape shape) {
+		return generation.isOpenStroke(shape);
+	}
+
+	/**
+	 * Applies a received stroke segment to the matching stroke.
+	 * A BEGIN for a stroke that is already in the drawing is ignored, as are segments for unknown strokes.
+	 * @param segment is the segment.
+	 * @return the stroke the segment was applied to, or null if it was ignored.
+	 */
+	public FreehandShape applyStrokeSegment(StrokeSegment segment) {
+		Generation current = generation;
+		FreehandShape stroke;
+		switch (segment.getKind()) {
+			case BEGIN:
+				stroke = new FreehandShape(segment.getColor(), segment.getThickness());
+				stroke.setId(segment.getShapeId());
+				stroke.addPoints(segment.getPoints());
+				if (current.openStrokes.putIfAbsent(segment.getShapeId(), stroke) != null) {
+					return null;
+				}
+				// Opened before it is added, so it isn't rendered as finished meanwhile.
+				if (!current.add(stroke)) {
+					current.openStrokes.remove(segment.getShapeId(), stroke);
+					return null;
+				}
+				return stroke;
+			case APPEND:
+				stroke = current.openStrokes.get(segment.getShapeId());
+				if (stroke != null) {
+					stroke.addPoints(segment.getPoints());
+					shapeChanged(stroke);
+				}
+				return stroke;
+			default:
+				return current.openStrokes.remove(segment.getShapeId());
+		}
+	}
+
+	/**
+	 * Adds a rectangle, oval or line that is still being dragged, so shape updates can be applied to it.
+	 * @param shape is the shape.
+	 */
+	public void beginPreview(Shape shape) {
+		Generation current = generation;
+		current.openPreviews.put(shape.getId(), shape);
+		if (!current.add(shape)) {
+			current.openPreviews.remove(shape.getId(), shape);
+		}
+	}
+
+	/**
+	 * Marks a shape that was being dragged as finished.
+	 * @param id is the id of the shape.
+	 */
+	public void endPreview(long id) {
+		generation.openPreviews.remove(id);
+	}
+
+	/**
+	 * Checks if a shape is still being dragged.
+	 * @param shape is the shape.
+	 * @return true if the shape is an open preview.
+	 */
+	public boolean isOpenPreview(Shape shape) {
+		return generation.isOpenPreview(shape);
+	}
+
+	/**
+	 * Applies a received shape update to the matching preview.
+	 * A BEGIN for a shape that is already in the drawing is ignored, as are moves of unknown previews.
+	 * @param update is the update.
+	 * @return the area of the drawing that changed, or null if the update was ignored.
+	 */
+	public Rectangle applyShapeUpdate(ShapeUpdate update) {
+		Generation current = generation;
+		if (update.getKind() == ShapeUpdate.Kind.BEGIN) {
+			if (current.openPreviews.putIfAbsent(update.getShapeId(), update.getShape()) != null) {
+				return null;
+			}
+			if (!current.add(update.getShape())) {
+				current.openPreviews.remove(update.getShapeId(), update.getShape());
+				return null;
+			}
+			return update.getShape().getBounds();
+		}
+		Shape preview = current.openPreviews.get(update.getShapeId());
+		return preview != null ? moveEndPoint(preview, update.getEndPoint()) : null;
+	}
+
+	/**
+	 * Adds a received finished shape. If it was previewed, the preview is moved to the final end point and
+	 * finished instead, so it keeps its place in the drawing. A shape that is already in the drawing is ignored,
+	 * unless it is a newer version of a finished shape, sent whole by its client after reconnecting: then the
+	 * rectangle, oval or line is moved to the new end point, or the stroke gets the points it is missing.
+	 * @param shape is the shape.
+	 * @return the area of the drawing that changed, or null if the shape was ignored.
+	 */
+	public Rectangle finishShape(Shape shape) {
+		Generation current = generation;
+		Shape preview = current.openPreviews.remove(shape.getId());
+		if (preview != null && preview.getClass() == shape.getClass()) {
+			return moveEndPoint(preview, ShapeUpdate.getEndPoint(shape));
+		}
+		if (current.add(shape)) {
+			return shape.getBounds();
+		}
+		int ordinal = current.ordinalOf(shape.getId());
+		Shape existing = ordinal != ShapeIdMap.ABSENT ? current.shapes.get(ordinal) : null;
+		if (existing == null || existing.getClass() != shape.getClass() || current.isOpenStroke(existing)) {
+			return null;
+		}
+		Rectangle changed;
+		if (shape instanceof FreehandShape) {
+			changed = extendStroke((FreehandShape) existing, (FreehandShape) shape);
+		} else if (!ShapeUpdate.getEndPoint(existing).equals(ShapeUpdate.getEndPoint(shape))) {
+			changed = moveEndPoint(existing, ShapeUpdate.getEndPoint(shape));
+		} else {
+			return null; // The same version, such as a message replayed after resuming.
+		}
+		if (changed != null) {
+			// Counted like a removal, so a cached rendering of the old version is dropped.
+			current.removedCount.incrementAndGet();
+		}
+		return changed;
+	}
+
+	/**
+	 * Adds the points a stroke in the drawing is missing from a newer version of it.
+	 * @param stroke is the stroke in the drawing.
+	 * @param newer is the newer version, whose first points are the points of the stroke.
+	 * @return the area covered by the added points, or null if the stroke had all of them.
+	 */
+	private Rectangle extendStroke(FreehandShape stroke, FreehandShape newer) {
+		int from = stroke.getPointCount();
+		if (from >= newer.getPointCount()) {
+			return null;
+		}
+		int[] points = new int[(newer.getPointCount() - from) * 2];
+		for (int i = from; i < newer.getPointCount(); i++) {
+			points[(i - from) * 2] = newer.getX(i);
+			points[(i - from) * 2 + 1] = newer.getY(i);
+		}
+		stroke.addPoints(points);
+		shapeChanged(stroke);
+		return stroke.getBounds(from - 1); // Including the line to the first added point.
+	}
+
+	/**
+	 * Moves the end point of a rectangle, oval or line in the drawing.
+	 * @param shape is the shape.
+	 * @param endPoint is the new end point.
+	 * @return the area covered by the shape before and after the move.
+	 */
+	private Rectangle moveEndPoint(Shape shape, Point endPoint) {
+		Rectangle changed = shape.getBounds();
+		ShapeUpdate.setEndPoint(shape, endPoint);
+		changed.add(shape.getBounds());
+		shapeChanged(shape);
+		return changed;
+	}
+
+	/**
+	 * The shapes added since the drawing was last cleared, with their ids, index, open strokes and open previews.
+	 */
+	private static class Generation implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private static final int STRIPE_BITS = 4;
+		private static final int STRIPES = 1 << STRIPE_BITS;
+		private static final int RESERVED = Integer.MAX_VALUE; // The ordinal of an id whose shape is being appended.
+		private final ShapeStore shapes = new ShapeStore();
+		// The ordinal of each shape by its id, split by a hash of the id. Each stripe is guarded by itself and only
+		// held for the map updates before and after a shape is appended, so appending to the store stays lock-free.
+		private final ShapeIdMap[] ordinals = new ShapeIdMap[STRIPES];
+		private final SpatialGrid index; // Index over the bounds of the shapes, or null. Guarded by itself.
+		private final Map<Long, FreehandShape> openStrokes = new ConcurrentHashMap<>(); // Strokes still being drawn.
+		private final Map<Long, Shape> openPreviews = new ConcurrentHashMap<>(); // Shapes still being dragged.
+		private final AtomicInteger removedCount = new AtomicInteger();
+
+		Generation(boolean indexed) {
+			for (int i = 0; i < STRIPES; i++) {
+				ordinals[i] = new ShapeIdMap();
+			}
+			index = indexed ? new SpatialGrid(INDEX_CELL_SIZE) : null;
+		}
+
+		boolean add(Shape shape) {
+			long id = shape.getId();
+			ShapeIdMap stripe = stripeOf(id);
+			// The id is reserved before the shape is appended, so a shape that is already in the drawing, as after a
+			// resume or a replay, is turned away without taking up a slot in the store.
+			synchronized (stripe) {
+				if (!stripe.putIfAbsent(id, RESERVED)) {
+					return false;
+				}
+			}
+			int ordinal = shapes.add(shape);
+			synchronized (stripe) {
+				stripe.replace(id, RESERVED, ordinal);
+			}
+			if (index != null) {
+				index(ordinal, shape);
+			}
+			return true;
+		}
+
+		Shape remove(long id) {
+			ShapeIdMap stripe = stripeOf(id);
+			int ordinal;
+			synchronized (stripe) {
+				// A shape still being appended isn't in the drawing yet, so its reservation is left alone.
+				ordinal = stripe.get(id) != RESERVED ? stripe.remove(id) : ShapeIdMap.ABSENT;
+			}
+			if (ordinal == ShapeIdMap.ABSENT) {
+				return null;
+			}
+			removedCount.incrementAndGet();
+			return shapes.remove(ordinal);
+		}
+
+		int ordinalOf(long id) {
+			ShapeIdMap stripe = stripeOf(id);
+			int ordinal;
+			synchronized (stripe) {
+				ordinal = stripe.get(id);
+			}
+			return ordinal != RESERVED ? ordinal : ShapeIdMap.ABSENT;
+		}
+
+		// The stripe is picked by the high bits of the hash, which the map itself doesn't use for its slots.
+		ShapeIdMap stripeOf(long id) {
+			return ordinals[(int) ((id * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - STRIPE_BITS))];
+		}
+
+		void index(int ordinal, Shape shape) {
+			Rectangle bounds = shape.getBounds();
+			synchronized (index) {
+				index.put(ordinal, bounds);
+			}
+		}
+
+		boolean isOpenStroke(Shape shape) {
+			return shape instanceof FreehandShape && openStrokes.get(shape.getId()) == shape;
+		}
+
+		boolean isOpenPreview(Shape shape) {
+			return !(shape instanceof FreehandShape) && openPreviews.get(shape.getId()) == shape;
+		}
 	}
 }
@@ -0,0 +1,310 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+import se.miun.dt176g.xxxxyyyy.reactive.support.WireProtocol;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * <h1>DrawingJournal</h1>
+ * Append-only file of the changes made to the server's Drawing, so it can be rebuilt after a restart.
+ * The file has the same layout as a connection: the stream header followed by length-prefixed frames.
+ * Frames are appended by a writer thread, which writes everything queued since its last write at once
+ * and forces it to disk once per such group, so the broadcast path never waits for the disk.
+ * Once the journal has grown enough it is compacted: it is replaced by an image of the current drawing,
+ * followed by the frames appended after the image was taken, so a restart only replays the live drawing.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class DrawingJournal {
+    private static final int HEADER_LENGTH = 5;
+    private static final int COMPACT_WRITE_FRAMES = 4096;
+    private static final Object CLOSE = new Object(); // Tells the writer thread to stop.
+    private final Path path;
+    // Frames, images of the drawing to compact to, and CLOSE, in the order they were queued.
+    private final BlockingQueue<Object> pending = new LinkedBlockingQueue<>();
+    private final FrameEncoder encoder = new FrameEncoder(); // Only used by the writer thread.
+    private FileChannel channel;
+    private Thread writerThread;
+    private volatile boolean writing = false;
+    private volatile boolean compactionQueued = false;
+    private volatile long size; // Size of the file, updated by the writer thread.
+    private volatile long compactedSize = 0; // Size of the file after the last compaction.
+
+    /**
+     * Constructor which sets the file of the journal.
+     * @param path is the path of the file.
+     */
+    public DrawingJournal(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens the journal, reading the messages already in it and starting the writer thread.
+     * A frame left incomplete by a crash is cut off, so new frames are appended after the last complete one.
+     * @return the messages in the journal, in the order they were appended.
+     * @throws IOException if the file can't be read or written, or isn't a journal.
+     */
+    public List<Object> open() throws IOException {
+        List<Object> messages = new ArrayList<>();
+        byte[] data = Files.exists(path) ? Files.readAllBytes(path) : new byte[0];
+        int end = data.length == 0 ? 0 : readFrames(data, messages);
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (end < channel.size()) {
+            channel.truncate(end);
+        }
+        channel.position(end);
+        if (end == 0) {
+            writeHeader(channel);
+        }
+        size = channel.size();
+        writing = true;
+        writerThread = new Thread(this::writeFrames, "journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        return messages;
+    }
+
+    /**
+     * Queues an encoded frame to be appended to the journal. Never blocks.
+     * @param frame is the encoded frame.
+     */
+    public void append(byte[] frame) {
+        if (writing) {
+            pending.add(frame);
+        }
+    }
+
+    /**
+     * Checks if the journal has grown enough since it was last compacted to be worth compacting.
+     * @return true if it should be compacted.
+     */
+    public boolean needsCompaction() {
+        return writing && !compactionQueued
+                && size > Math.max(Constants.JOURNAL_COMPACT_MIN_BYTES, compactedSize * 2);
+    }
+
+    /**
+     * Queues a compaction of the journal. Must be called on the same thread as {@link #append(byte[])},
+     * with an image of the drawing that includes exactly the frames appended before this call.
+     * @param image are the Shapes, StrokeSegments and ShapeUpdates of the drawing, which must not change any more.
+     */
+    public void compact(List<?> image) {
+        if (writing) {
+            compactionQueued = true;
+            pending.add(image);
+        }
+    }
+
+    /**
+     * Writes what is queued, stops the writer thread and closes the file.
+     */
+    public void close() {
+        if (writerThread == null) {
+            return;
+        }
+        pending.add(CLOSE);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+    }
+
+    /**
+     * Decodes the frames of a journal.
+     * @param data is the content of the file.
+     * @param messages is where the decoded messages are added.
+     * @return the offset after the last complete frame.
+     * @throws IOException if the file isn't a journal.
+     */
+    private static int readFrames(byte[] data, List<Object> messages) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < HEADER_LENGTH) {
+            return 0;
+        }
+        if (buffer.getInt() != WireProtocol.MAGIC || buffer.get() != WireProtocol.VERSION) {
+            throw new StreamCorruptedException("Not a drawing journal");
+        }
+        FrameDecoder decoder = new FrameDecoder();
+        int end = buffer.position();
+        while (buffer.hasRemaining()) {
+            int length = readLength(buffer);
+            if (length <= 0 || length > buffer.remaining()) {
+                break; // Incomplete frame at the end of the file.
+            }
+            try {
+                messages.add(decoder.decode(data, buffer.position(), length));
+            } catch (StreamCorruptedException e) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+            end = buffer.position();
+        }
+        return end;
+    }
+
+    /**
+     * Reads a varint frame length.
+     * @param buffer is the buffer to read from.
+     * @return the length, or -1 if it is incomplete or malformed.
+     */
+    private static int readLength(ByteBuffer buffer) {
+        int length = 0;
+        for (int shift = 0; shift <= 28 && buffer.hasRemaining(); shift += 7) {
+            byte b = buffer.get();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return length <= WireProtocol.MAX_FRAME_LENGTH ? length : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writer loop, appending each group of queued frames with one write and one force.
+     */
+    private void writeFrames() {
+        List<Object> group = new ArrayList<>();
+        List<byte[]> frames = new ArrayList<>();
+        boolean closing = false;
+        try {
+            while (!closing) {
+                group.add(pending.take());
+                pending.drainTo(group);
+                for (Object entry : group) {
+                    if (entry instanceof byte[]) {
+                        frames.add((byte[]) entry);
+                        continue;
+                    }
+                    // Write the frames queued before the compaction or the close first.
+                    write(channel, frames);
+                    frames.clear();
+                    if (entry == CLOSE) {
+                        closing = true;
+                        break;
+                    }
+                    compactTo((List<?>) entry);
+                }
+                write(channel, frames);
+                frames.clear();
+                channel.force(false);
+                size = channel.size();
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Keep the server running, only the journal is lost.
+            e.printStackTrace();
+        } finally {
+            writing = false;
+            pending.clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with an image of the drawing. The image is written to a temporary file which
+     * is then moved over the journal, so a crash leaves either the old or the new journal.
+     * If it fails, appending continues to the old journal.
+     * @param image are the Shapes and StrokeSegments of the drawing.
+     * @throws IOException if the journal can't be opened again.
+     */
+    private void compactTo(List<?> image) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(out);
+                List<byte[]> frames = new ArrayList<>();
+                for (Object message : image) {
+                    frames.add(encoder.encode(message));
+                    if (frames.size() == COMPACT_WRITE_FRAMES) {
+                        write(out, frames);
+                        frames.clear();
+                    }
+                }
+                write(out, frames);
+                out.force(false);
+            }
+            channel.close();
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                channel = FileChannel.open(path, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+            compactedSize = channel.size();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Files.deleteIfExists(temp);
+            if (!channel.isOpen()) {
+                throw e;
+            }
+        } finally {
+            compactionQueued = false;
+        }
+    }
+
+    /**
+     * Writes the stream header.
+     * @param out is the file to write to.
+     * @throws IOException if writing fails.
+     */
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(WireProtocol.MAGIC).put((byte) WireProtocol.VERSION).flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+    }
+
+    /**
+     * Writes frames with their varint length prefixes in one write.
+     * @param out is the file to write to.
+     * @param frames are the frames.
+     * @throws IOException if writing fails.
+     */
+    private static void write(FileChannel out, List<byte[]> frames) throws IOException {
+        if (frames.isEmpty()) {
+            return;
+        }
+        int length = 0;
+        for (byte[] frame : frames) {
+            length += 5 + frame.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] frame : frames) {
+            int frameLength = frame.length;
+            while ((frameLength & ~0x7F) != 0) {
+                buffer.put((byte) ((frameLength & 0x7F) | 0x80));
+                frameLength >>>= 7;
+            }
+            buffer.put((byte) frameLength);
+            buffer.put(frame);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package se.miun.dt176g.xxxxyyyy.reactive;
 
-import io.reactivex.rxjava3.core.Observable;
-import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.processors.PublishProcessor;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.swing.*;
 
 /**
@@ -21,7 +26,19 @@ public class DrawingPanel extends JPanel {
 	public int selectedThickness = 2; // Default thickness.
 	public String selectedShape = "Freehand"; // Default shape type.
 	private final ConnectionHandler connectionHandler; // Owner of the drawing panel.
-	private final PublishSubject<Shape> shapePublishSubject = PublishSubject.create();
+	private final ShapeIdSource shapeIds; // Hands out the ids of the shapes drawn here.
+	private final PublishProcessor<Shape> shapePublishProcessor = PublishProcessor.create();
+	private final PublishProcessor<StrokeSegment> strokeSegmentProcessor = PublishProcessor.create();
+	private final PublishProcessor<ShapeUpdate> shapeUpdateProcessor = PublishProcessor.create();
+	private final PublishProcessor<MouseEvent> mouseEventProcessor = PublishProcessor.create();
+	private int[] pendingStrokePoints = new int[Constants.STROKE_FLUSH_POINTS * 2]; // Points not yet streamed.
+	private int pendingStrokePointCount = 0;
+	private final Timer strokeFlushTimer; // Streams pending points of a stroke that pauses.
+	private final int minPointDistance; // Smallest move, in pixels, added to a stroke.
+	private final double strokeTolerance; // Largest error, in pixels, allowed when simplifying a stroke.
+	private BufferedImage committedLayer; // Cache of the shapes that are no longer changing.
+	private int committedCount = 0; // Number of shapes, from the start of the drawing, in the cache.
+	private int committedRemovedCount = 0; // Number of shapes removed from the drawing when the cache was created.
 
 	/**
 	 * Constructor which creates the mouse event listeners and subscribes to the menu observables.
@@ -31,26 +48,34 @@ public class DrawingPanel extends JPanel {
 	public DrawingPanel(Drawing drawing, Menu menu, ConnectionHandler connectionHandler) {
 		this.drawing = drawing;
 		this.connectionHandler = connectionHandler;
+		shapeIds = connectionHandler.getShapeIds();
 
-		// Subscribe to Shapes being drawn.
-		shapePublishSubject.subscribe(this::sendShapeToConnectionHandler);
-
-		// Create a subject for mouse events.
-		PublishSubject<MouseEvent> mouseEventSubject = PublishSubject.create();
-		// Share the observable.
-		Observable<MouseEvent> mouseEventObservable = mouseEventSubject.share();
+		// Subscribe to Shapes being drawn. The subscribers run synchronously on the EDT, where the connection handler
+		// only queues the messages, so there is nothing to buffer here.
+		shapePublishProcessor
+				.subscribe(this::sendShapeToConnectionHandler, Throwable::printStackTrace);
+		// Subscribe to segments of freehand strokes being drawn.
+		strokeSegmentProcessor
+				.subscribe(connectionHandler::sendStrokeSegment, Throwable::printStackTrace);
+		// Subscribe to updates of rectangles, ovals and lines being dragged, streamed as live previews. Their drags
+		// are already throttled, see gestureEvents().
+		shapeUpdateProcessor
+				.subscribe(connectionHandler::sendShapeUpdate, Throwable::printStackTrace);
+		strokeFlushTimer = new Timer(Constants.STROKE_FLUSH_INTERVAL_MS, e -> flushStrokePoints());
+		minPointDistance = Integer.getInteger(Constants.MIN_POINT_DISTANCE_PROPERTY, Constants.MIN_POINT_DISTANCE);
+		strokeTolerance = Double.parseDouble(System.getProperty(Constants.STROKE_TOLERANCE_PROPERTY,
+				String.valueOf(Constants.STROKE_TOLERANCE)));
 
 		// Add mouse event listeners to handle user input for drawing.
 		addMouseListener(new MouseAdapter() {
 			@Override
 			public void mousePressed(MouseEvent e) {
-				mouseEventSubject.onNext(e); // Emit mouse press event.
+				mouseEventProcessor.onNext(e); // Emit mouse press event.
 			}
 
 			@Override
 			public void mouseReleased(MouseEvent e) {
-				// Pass forward the finished shape.
-				shapePublishSubject.onNext(currentShape);
+				mouseEventProcessor.onNext(e); // Emit mouse release event.
 			}
 		});
 
@@ -58,7 +83,7 @@ public class DrawingPanel extends JPanel {
 		addMouseMotionListener(new MouseAdapter() {
 			@Override
 			public void mouseDragged(MouseEvent e) {
-				mouseEventSubject.onNext(e); // Emit mouse drag event.
+				mouseEventProcessor.onNext(e); // Emit mouse drag event.
 			}
 		});
 
@@ -72,8 +97,30 @@ public class DrawingPanel extends JPanel {
 		menu.clearDrawingObservable()
 				.subscribe(clear -> onClear());
 
-		// Subscribe to the mouse event observable to handle drawing.
-		mouseEventObservable.subscribe(this::handleMouseEvent);
+		// Handle each press, and the drags and release following it, as one gesture.
+		// The rest of the gesture is created once the press has been handled, when the kind of shape is known.
+		// Nothing is drawn until a client id has been handed out, so the ids of the shapes can't clash.
+		mouseEventProcessor
+				.filter(e -> e.getID() == MouseEvent.MOUSE_PRESSED && shapeIds.hasNext())
+				.switchMap(press -> Flowable.just(press).concatWith(Flowable.defer(this::gestureEvents)))
+				.subscribe(this::handleMouseEvent, Throwable::printStackTrace);
+	}
+
+	/**
+	 * Creates the stream of the drags and the release of the gesture that was just started.
+	 * Every significant point of a freehand stroke is kept, while the drags of the other shapes only
+	 * update a preview, so only the latest drag per frame interval is handled and stale ones never queue up.
+	 * The release always comes last and carries the final position.
+	 * @return the events of the gesture.
+	 */
+	private Flowable<MouseEvent> gestureEvents() {
+		Flowable<MouseEvent> events = mouseEventProcessor
+				.filter(e -> e.getID() != MouseEvent.MOUSE_PRESSED)
+				.takeUntil(e -> e.getID() == MouseEvent.MOUSE_RELEASED);
+		if (currentShape instanceof FreehandShape) {
+			return events.filter(this::isSignificantMove);
+		}
+		return events.throttleLatest(Constants.PREVIEW_INTERVAL_MS, TimeUnit.MILLISECONDS, SwingScheduler.EDT, true);
 	}
 
 	/**
@@ -110,58 +157,179 @@ public class DrawingPanel extends JPanel {
 	}
 
 	/**
-	 * Handles mouse events, creating shapes drawn in the GUI.
+	 * Checks if a mouse event should be handled. Drags of a freehand stroke closer than the minimum distance
+	 * to the last point of the stroke, including duplicate points, are skipped.
+	 * @param e is the mouse event.
+	 * @return true if the event should be handled.
+	 */
+	private boolean isSignificantMove(MouseEvent e) {
+		if (e.getID() != MouseEvent.MOUSE_DRAGGED || !(currentShape instanceof FreehandShape)) {
+			return true;
+		}
+		FreehandShape stroke = (FreehandShape) currentShape;
+		int last = stroke.getPointCount() - 1;
+		int dx = e.getX() - stroke.getX(last);
+		int dy = e.getY() - stroke.getY(last);
+		return dx * dx + dy * dy >= minPointDistance * minPointDistance;
+	}
+
+	/**
+	 * Handles mouse events, creating shapes drawn in the GUI. A release moves the shape to its final
+	 * position and finishes it.
 	 * @param e is the mouse event.
 	 */
 	private void handleMouseEvent(MouseEvent e) {
 		int x = e.getX();
 		int y = e.getY();
+		boolean moved = e.getID() != MouseEvent.MOUSE_PRESSED;
+		// Bounds before the change, so the area the shape leaves is repainted too.
+		Rectangle previousBounds = moved && currentShape != null ? currentShape.getBounds() : null;
 		String selectedShapeType = selectedShape;
 		switch (selectedShapeType) {
 			case "Rectangle":
 				if (e.getID() == MouseEvent.MOUSE_PRESSED) {
 					currentShape = new RectangleShape(selectedColor, selectedThickness);
+					currentShape.setId(shapeIds.next());
 					((RectangleShape) currentShape).setStartPoint(new Point(x, y));
 					((RectangleShape) currentShape).setEndPoint(new Point(x, y));
-					drawing.addShape(currentShape);
-				} else if (e.getID() == MouseEvent.MOUSE_DRAGGED && currentShape instanceof RectangleShape) {
+					drawing.beginPreview(currentShape);
+				} else if (moved && currentShape instanceof RectangleShape) {
 					((RectangleShape) currentShape).setEndPoint(new Point(x, y));
 				}
 				break;
 			case "Oval":
 				if (e.getID() == MouseEvent.MOUSE_PRESSED) {
 					currentShape = new OvalShape(selectedColor, selectedThickness);
+					currentShape.setId(shapeIds.next());
 					((OvalShape) currentShape).setStartPoint(new Point(x, y));
 					((OvalShape) currentShape).setEndPoint(new Point(x, y));
-					drawing.addShape(currentShape);
-				} else if (e.getID() == MouseEvent.MOUSE_DRAGGED && currentShape instanceof OvalShape) {
+					drawing.beginPreview(currentShape);
+				} else if (moved && currentShape instanceof OvalShape) {
 					((OvalShape) currentShape).setEndPoint(new Point(x, y));
 				}
 				break;
 			case "Line":
 				if (e.getID() == MouseEvent.MOUSE_PRESSED) {
 					currentShape = new LineShape(selectedColor, selectedThickness);
+					currentShape.setId(shapeIds.next());
 					((LineShape) currentShape).setStartPoint(new Point(x, y));
 					((LineShape) currentShape).setEndPoint(new Point(x, y));
-					drawing.addShape(currentShape);
-				} else if (e.getID() == MouseEvent.MOUSE_DRAGGED && currentShape instanceof LineShape) {
+					drawing.beginPreview(currentShape);
+				} else if (moved && currentShape instanceof LineShape) {
 					((LineShape) currentShape).setEndPoint(new Point(x, y));
 				}
 				break;
 			case "Freehand":
 				if (e.getID() == MouseEvent.MOUSE_PRESSED) {
-					currentShape = new FreehandShape(selectedColor, selectedThickness);
-					((FreehandShape) currentShape).addPoint(x, y);
-					drawing.addShape(currentShape);
+					FreehandShape stroke = new FreehandShape(selectedColor, selectedThickness);
+					stroke.setId(shapeIds.next());
+					stroke.addPoint(x, y);
+					currentShape = stroke;
+					drawing.beginStroke(stroke);
+					// Stream the stroke while it is drawn.
+					pendingStrokePointCount = 0;
+					strokeSegmentProcessor.onNext(StrokeSegment.begin(stroke));
+					strokeFlushTimer.restart();
 				} else if (e.getID() == MouseEvent.MOUSE_DRAGGED && currentShape instanceof FreehandShape) {
 					((FreehandShape) currentShape).addPoint(x, y);
+					queueStrokePoint(x, y);
 				}
 				break;
 			default:
 				throw new IllegalArgumentException("Invalid selectedShapeType: " + selectedShapeType);
 		}
-		// Repaint the panel with the updated drawing.
-		repaint();
+		if (moved && currentShape != null) {
+			drawing.shapeChanged(currentShape);
+		}
+		// Stream the preview, the release sends the finished shape instead.
+		if (currentShape != null && !(currentShape instanceof FreehandShape)) {
+			if (e.getID() == MouseEvent.MOUSE_PRESSED) {
+				shapeUpdateProcessor.onNext(ShapeUpdate.begin(currentShape));
+			} else if (e.getID() == MouseEvent.MOUSE_DRAGGED) {
+				Point endPoint = ShapeUpdate.getEndPoint(currentShape);
+				shapeUpdateProcessor.onNext(ShapeUpdate.move(currentShape.getId(), endPoint));
+			}
+		}
+
+		// Repaint only the part of the panel that changed.
+		if (currentShape instanceof FreehandShape) {
+			FreehandShape stroke = (FreehandShape) currentShape;
+			repaint(stroke.getBounds(stroke.getPointCount() - 2));
+		} else if (currentShape != null) {
+			Rectangle bounds = currentShape.getBounds();
+			repaint(previousBounds != null ? bounds.union(previousBounds) : bounds);
+		}
+		if (e.getID() == MouseEvent.MOUSE_RELEASED) {
+			finishCurrentShape();
+		}
+	}
+
+	/**
+	 * Repaints the area changed by a stroke segment that was applied to a stroke.
+	 * @param stroke is the stroke.
+	 * @param segment is the applied segment.
+	 */
+	public void repaintStrokeSegment(FreehandShape stroke, StrokeSegment segment) {
+		int addedPoints = segment.getPoints().length / 2;
+		if (addedPoints > 0) {
+			// Include the point before the new ones, the line to it is new too.
+			repaint(stroke.getBounds(stroke.getPointCount() - addedPoints - 1));
+		}
+	}
+
+	/**
+	 * Passes forward the finished shape. A freehand stroke has already been streamed, so only its
+	 * remaining points and the end of the stroke are sent.
+	 */
+	private void finishCurrentShape() {
+		if (currentShape instanceof FreehandShape) {
+			strokeFlushTimer.stop();
+			flushStrokePoints();
+			drawing.endStroke(currentShape.getId());
+			strokeSegmentProcessor.onNext(StrokeSegment.end(currentShape.getId()));
+		} else if (currentShape != null) {
+			drawing.endPreview(currentShape.getId());
+			shapePublishProcessor.onNext(currentShape);
+		}
+		currentShape = null;
+	}
+
+	/**
+	 * Queues a point of the current stroke, streaming the queued points once there are enough of them.
+	 * @param x is the x coordinate.
+	 * @param y is the y coordinate.
+	 */
+	private void queueStrokePoint(int x, int y) {
+		pendingStrokePoints[pendingStrokePointCount * 2] = x;
+		pendingStrokePoints[pendingStrokePointCount * 2 + 1] = y;
+		pendingStrokePointCount++;
+		if (pendingStrokePointCount >= Constants.STROKE_FLUSH_POINTS) {
+			flushStrokePoints();
+		}
+	}
+
+	/**
+	 * Simplifies and streams the queued points of the current stroke, if there are any.
+	 * The queued points of the local stroke are replaced with the simplified ones, so every peer
+	 * ends up with the same stroke.
+	 */
+	private void flushStrokePoints() {
+		if (pendingStrokePointCount > 0 && currentShape instanceof FreehandShape) {
+			FreehandShape stroke = (FreehandShape) currentShape;
+			int batchStart = stroke.getPointCount() - pendingStrokePointCount;
+			int[] points = StrokeSimplifier.simplify(stroke.getX(batchStart - 1), stroke.getY(batchStart - 1),
+					pendingStrokePoints, pendingStrokePointCount, strokeTolerance);
+			if (points.length / 2 < pendingStrokePointCount) {
+				// The simplified path stays within the area of the queued points.
+				Rectangle dirty = stroke.getBounds(batchStart - 1);
+				stroke.truncate(batchStart);
+				stroke.addPoints(points);
+				drawing.shapeChanged(stroke);
+				repaint(dirty);
+			}
+			strokeSegmentProcessor.onNext(StrokeSegment.append(stroke.getId(), points, points.length / 2));
+		}
+		pendingStrokePointCount = 0;
 	}
 
 	/**
@@ -169,9 +337,18 @@ public class DrawingPanel extends JPanel {
 	 */
 	public void clearDrawing() {
 		drawing.clear();
+		invalidateCommittedLayer();
 		repaint(); // Redraw the panel to reflect the cleared drawing.
 	}
 
+	/**
+	 * Discards the cached shapes, so they are rasterized again on the next repaint.
+	 */
+	public void invalidateCommittedLayer() {
+		committedLayer = null;
+		committedCount = 0;
+	}
+
 	/**
 	 * Clears the drawing and notifies the associated client/server, about the clear event.
 	 */
@@ -184,10 +361,67 @@ public class DrawingPanel extends JPanel {
 	 */
 	@Override
 	protected void paintComponent(Graphics g) {
+		long start = System.nanoTime();
 		super.paintComponent(g);
-		// Iterate over shapes in the drawing and call their draw method.
-		for (Shape shape : drawing.getShapes()) {
+		List<Shape> shapes = drawing.getShapes();
+		if (committedLayer == null || committedLayer.getWidth() != getWidth()
+				|| committedLayer.getHeight() != getHeight() || committedCount > shapes.size()
+				|| committedRemovedCount != drawing.getRemovedCount()) {
+			createCommittedLayer();
+		}
+
+		// Rasterize the shapes that are finished into the cache once, in drawing order, stopping at the first
+		// shape that is still being drawn so the order of the shapes is kept.
+		if (committedLayer != null && committedCount < shapes.size() && !isLive(shapes.get(committedCount))) {
+			Graphics2D layer = committedLayer.createGraphics();
+			while (committedCount < shapes.size() && !isLive(shapes.get(committedCount))) {
+				Shape shape = shapes.get(committedCount);
+				if (shape != null) {
+					shape.draw(layer);
+				}
+				committedCount++;
+			}
+			layer.dispose();
+		}
+		if (committedLayer != null) {
+			g.drawImage(committedLayer, 0, 0, null);
+		}
+
+		// Draw the remaining shapes, the ones being drawn and those after them, on top.
+		// Only the shapes intersecting the area being repainted are drawn.
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+		for (Shape shape : drawing.query(clip, committedCount)) {
 			shape.draw(g);
 		}
+		Metrics.get().record(Metrics.Timing.REPAINT, start);
+	}
+
+	/**
+	 * Creates an empty cache matching the size of the panel.
+	 */
+	private void createCommittedLayer() {
+		committedCount = 0;
+		committedRemovedCount = drawing.getRemovedCount();
+		committedLayer = null;
+		if (getWidth() <= 0 || getHeight() <= 0) {
+			return;
+		}
+		GraphicsConfiguration configuration = getGraphicsConfiguration();
+		committedLayer = configuration != null
+				? configuration.createCompatibleImage(getWidth(), getHeight(), Transparency.TRANSLUCENT)
+				: new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+	}
+
+	/**
+	 * Checks if a shape may still change, either being drawn here or streamed from a peer.
+	 * @param shape is the shape, or null if it was removed.
+	 * @return true if the shape may still change.
+	 */
+	private boolean isLive(Shape shape) {
+		return shape != null
+				&& (shape == currentShape || drawing.isOpenStroke(shape) || drawing.isOpenPreview(shape));
 	}
 }
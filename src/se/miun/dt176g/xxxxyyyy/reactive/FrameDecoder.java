@@ -0,0 +1,298 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+import se.miun.dt176g.xxxxyyyy.reactive.support.WireProtocol;
+
+import java.awt.*;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1>FrameDecoder</h1>
+ * Decodes binary frame payloads written by {@link FrameEncoder} back into Shapes and control messages.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class FrameDecoder {
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Decodes a frame payload.
+     * @param frame is the payload.
+     * @return a Shape, a StrokeSegment, a ShapeUpdate, a SnapshotChunk, a MessageBatch, a JoinRoom, a ResumePoint, or one of the control Strings in {@link Constants}.
+     * @throws StreamCorruptedException if the payload is malformed.
+     */
+    public Object decode(byte[] frame) throws StreamCorruptedException {
+        return decode(frame, 0, frame.length);
+    }
+
+    /**
+     * Decodes a frame payload from a part of an array.
+     * @param frame is the array holding the payload.
+     * @param offset is the offset of the payload.
+     * @param length is the length of the payload.
+     * @return a Shape, a StrokeSegment, a ShapeUpdate, a SnapshotChunk, a MessageBatch, a JoinRoom, a ResumePoint, or one of the control Strings in {@link Constants}.
+     * @throws StreamCorruptedException if the payload is malformed.
+     */
+    public synchronized Object decode(byte[] frame, int offset, int length) throws StreamCorruptedException {
+        buffer = frame;
+        position = offset;
+        limit = offset + length;
+        try {
+            byte tag = readByte();
+            switch (tag) {
+                case WireProtocol.TAG_RECTANGLE:
+                case WireProtocol.TAG_OVAL:
+                case WireProtocol.TAG_LINE:
+                case WireProtocol.TAG_FREEHAND:
+                    return readShape(tag);
+                case WireProtocol.TAG_SHAPE_BEGIN:
+                    byte shapeTag = readByte();
+                    if (shapeTag != WireProtocol.TAG_RECTANGLE && shapeTag != WireProtocol.TAG_OVAL
+                            && shapeTag != WireProtocol.TAG_LINE) {
+                        throw new StreamCorruptedException("Invalid shape tag in update: " + shapeTag);
+                    }
+                    return ShapeUpdate.decoded(readShape(shapeTag));
+                case WireProtocol.TAG_SHAPE_MOVE:
+                    long moveId = readVarLong();
+                    return ShapeUpdate.move(moveId, readPoint(0, 0));
+                case WireProtocol.TAG_STROKE_BEGIN:
+                    long beginId = readVarLong();
+                    Color color = new Color(readInt(), true);
+                    int thickness = readThickness();
+                    return new StrokeSegment(StrokeSegment.Kind.BEGIN, beginId, color, thickness, readPoints());
+                case WireProtocol.TAG_STROKE_APPEND:
+                    long appendId = readVarLong();
+                    return new StrokeSegment(StrokeSegment.Kind.APPEND, appendId, null, 0, readPoints());
+                case WireProtocol.TAG_STROKE_END:
+                    return StrokeSegment.end(readVarLong());
+                case WireProtocol.TAG_SNAPSHOT_CHUNK:
+                    boolean last = readByte() != 0;
+                    byte[] data = Arrays.copyOfRange(buffer, position, limit);
+                    position = limit;
+                    return new SnapshotChunk(last, data);
+                case WireProtocol.TAG_BATCH:
+                    return readBatch();
+                case WireProtocol.TAG_JOIN_ROOM:
+                    return new JoinRoom(readString());
+                case WireProtocol.TAG_RESUME_ROOM:
+                    long joinSession = readVarLong();
+                    long joinHistory = readVarLong();
+                    long joinSequence = readVarLong();
+                    return new JoinRoom(readString(), joinSession, joinHistory, joinSequence);
+                case WireProtocol.TAG_RESUME_POINT:
+                    long history = readVarLong();
+                    long sequence = readVarLong();
+                    int clientId = (int) readVarLong();
+                    return new ResumePoint(history, sequence, clientId, readVarLong());
+                case WireProtocol.TAG_SEQUENCE_MARK:
+                    return ResumePoint.mark(readVarLong());
+                case WireProtocol.TAG_CLEAR:
+                    return Constants.CLEAR;
+                case WireProtocol.TAG_SERVER_SHUT_DOWN:
+                    return Constants.SERVER_SHUT_DOWN;
+                case WireProtocol.TAG_CLIENT_SHUT_DOWN:
+                    return Constants.CLIENT_SHUT_DOWN;
+                default:
+                    throw new StreamCorruptedException("Unknown frame tag: " + tag);
+            }
+        } finally {
+            buffer = null;
+        }
+    }
+
+    /**
+     * Reads the rest of the payload as a UTF-8 string.
+     * @return the string.
+     */
+    private String readString() {
+        String string = new String(buffer, position, limit - position, StandardCharsets.UTF_8);
+        position = limit;
+        return string;
+    }
+
+    /**
+     * Reads a Shape of the given type, following its type tag.
+     * @param tag is the type tag.
+     * @return the Shape.
+     * @throws StreamCorruptedException if the payload is malformed.
+     */
+    private Shape readShape(byte tag) throws StreamCorruptedException {
+        long id = readVarLong();
+        Color color = new Color(readInt(), true);
+        int thickness = readThickness();
+        Shape shape;
+        switch (tag) {
+            case WireProtocol.TAG_RECTANGLE:
+                RectangleShape rectangle = new RectangleShape(color, thickness);
+                Point rectangleStart = readPoint(0, 0);
+                rectangle.setStartPoint(rectangleStart);
+                rectangle.setEndPoint(readPoint(rectangleStart.x, rectangleStart.y));
+                shape = rectangle;
+                break;
+            case WireProtocol.TAG_OVAL:
+                OvalShape oval = new OvalShape(color, thickness);
+                Point ovalStart = readPoint(0, 0);
+                oval.setStartPoint(ovalStart);
+                oval.setEndPoint(readPoint(ovalStart.x, ovalStart.y));
+                shape = oval;
+                break;
+            case WireProtocol.TAG_LINE:
+                LineShape line = new LineShape(color, thickness);
+                Point lineStart = readPoint(0, 0);
+                line.setStartPoint(lineStart);
+                line.setEndPoint(readPoint(lineStart.x, lineStart.y));
+                shape = line;
+                break;
+            default:
+                FreehandShape freehand = new FreehandShape(color, thickness);
+                int count = (int) readVarLong();
+                int x = 0;
+                int y = 0;
+                for (int i = 0; i < count; i++) {
+                    x += readSignedVarInt();
+                    y += readSignedVarInt();
+                    freehand.addPoint(x, y);
+                }
+                shape = freehand;
+                break;
+        }
+        shape.setId(id);
+        return shape;
+    }
+
+    /**
+     * Reads the frames of a batch, following its type tag, and decodes each of them.
+     * @return the batch.
+     * @throws StreamCorruptedException if the payload is malformed or holds a nested batch.
+     */
+    private MessageBatch readBatch() throws StreamCorruptedException {
+        long count = readVarLong();
+        if (count < 0 || count > limit - position) {
+            throw new StreamCorruptedException("Invalid batch count: " + count);
+        }
+        // Find the frames first, decoding them reuses the fields of the decoder.
+        byte[] batch = buffer;
+        int[] offsets = new int[(int) count];
+        int[] lengths = new int[(int) count];
+        for (int i = 0; i < count; i++) {
+            long length = readVarLong();
+            if (length <= 0 || length > limit - position) {
+                throw new StreamCorruptedException("Invalid frame length in batch: " + length);
+            }
+            offsets[i] = position;
+            lengths[i] = (int) length;
+            position += (int) length;
+            if (batch[offsets[i]] == WireProtocol.TAG_BATCH) {
+                throw new StreamCorruptedException("Nested batch");
+            }
+        }
+        List<Object> messages = new ArrayList<>((int) count);
+        for (int i = 0; i < count; i++) {
+            messages.add(decode(batch, offsets[i], lengths[i]));
+        }
+        return new MessageBatch(messages);
+    }
+
+    /**
+     * Reads a count followed by points written as deltas to the previous point.
+     * @return the points as x and y pairs.
+     * @throws StreamCorruptedException if the payload is malformed.
+     */
+    private int[] readPoints() throws StreamCorruptedException {
+        long count = readVarLong();
+        if (count < 0 || count > (limit - position) / 2) {
+            throw new StreamCorruptedException("Invalid point count: " + count);
+        }
+        int[] points = new int[(int) count * 2];
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < points.length; i += 2) {
+            x += readSignedVarInt();
+            y += readSignedVarInt();
+            points[i] = x;
+            points[i + 1] = y;
+        }
+        return points;
+    }
+
+    /**
+     * Reads a point written as a delta to a previous point.
+     * @param prevX is the x coordinate of the previous point.
+     * @param prevY is the y coordinate of the previous point.
+     * @return the point.
+     * @throws StreamCorruptedException if the payload is malformed.
+     */
+    private Point readPoint(int prevX, int prevY) throws StreamCorruptedException {
+        int x = prevX + readSignedVarInt();
+        int y = prevY + readSignedVarInt();
+        return new Point(x, y);
+    }
+
+    /**
+     * Reads the thickness of a shape, which must not be negative since it is used for a BasicStroke.
+     * @return the thickness.
+     * @throws StreamCorruptedException if the payload is malformed or the thickness is out of range.
+     */
+    private int readThickness() throws StreamCorruptedException {
+        long thickness = readVarLong();
+        if (thickness < 0 || thickness > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Invalid thickness: " + thickness);
+        }
+        return (int) thickness;
+    }
+
+    /**
+     * Reads a zigzag encoded varint.
+     * @return the value.
+     * @throws StreamCorruptedException if the payload is malformed.
+     */
+    private int readSignedVarInt() throws StreamCorruptedException {
+        int value = (int) readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     * @return the value.
+     * @throws StreamCorruptedException if the payload is malformed.
+     */
+    private long readVarLong() throws StreamCorruptedException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    /**
+     * Reads four big-endian bytes as an int.
+     * @return the value.
+     * @throws StreamCorruptedException if the payload is malformed.
+     */
+    private int readInt() throws StreamCorruptedException {
+        return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16 | (readByte() & 0xFF) << 8 | (readByte() & 0xFF);
+    }
+
+    /**
+     * Reads a single byte.
+     * @return the value.
+     * @throws StreamCorruptedException if the payload is exhausted.
+     */
+    private byte readByte() throws StreamCorruptedException {
+        if (position >= limit) {
+            throw new StreamCorruptedException("Truncated frame");
+        }
+        return buffer[position++];
+    }
+}
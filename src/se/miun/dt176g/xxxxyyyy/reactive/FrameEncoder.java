@@ -0,0 +1,329 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+import se.miun.dt176g.xxxxyyyy.reactive.support.WireProtocol;
+
+import java.awt.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1>FrameEncoder</h1>
+ * Encodes Shapes and control messages into compact binary frame payloads.
+ * Coordinates are written as zigzag varints, and every coordinate after the first one of a Shape
+ * is written as a delta to the previous one.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class FrameEncoder {
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    /**
+     * Encodes a message into a frame payload.
+     * @param message is a Shape, a StrokeSegment, a ShapeUpdate, a SnapshotChunk, a JoinRoom, a ResumePoint, or one of the control Strings in {@link Constants}.
+     * @return the encoded payload.
+     */
+    public synchronized byte[] encode(Object message) {
+        position = 0;
+        if (message instanceof Shape) {
+            writeShape((Shape) message);
+        } else if (message instanceof StrokeSegment) {
+            writeStrokeSegment((StrokeSegment) message);
+        } else if (message instanceof ShapeUpdate) {
+            writeShapeUpdate((ShapeUpdate) message);
+        } else if (message instanceof SnapshotChunk) {
+            SnapshotChunk chunk = (SnapshotChunk) message;
+            writeByte(WireProtocol.TAG_SNAPSHOT_CHUNK);
+            writeByte((byte) (chunk.isLast() ? 1 : 0));
+            writeBytes(chunk.getData());
+        } else if (message instanceof JoinRoom) {
+            writeJoinRoom((JoinRoom) message);
+        } else if (message instanceof ResumePoint) {
+            ResumePoint point = (ResumePoint) message;
+            if (point.isMark()) {
+                return encodeSequenceMark(point.getSequence());
+            }
+            writeByte(WireProtocol.TAG_RESUME_POINT);
+            writeVarLong(point.getHistory());
+            writeVarLong(point.getSequence());
+            writeVarLong(point.getClientId() & 0xFFFFFFFFL);
+            writeVarLong(point.getSession());
+        } else if (Constants.CLEAR.equals(message)) {
+            writeByte(WireProtocol.TAG_CLEAR);
+        } else if (Constants.SERVER_SHUT_DOWN.equals(message)) {
+            writeByte(WireProtocol.TAG_SERVER_SHUT_DOWN);
+        } else if (Constants.CLIENT_SHUT_DOWN.equals(message)) {
+            writeByte(WireProtocol.TAG_CLIENT_SHUT_DOWN);
+        } else {
+            throw new IllegalArgumentException("Unsupported message: " + message);
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Wraps already encoded frame payloads into the payload of one batch frame.
+     * Doesn't use the buffer of the encoder, so writer threads can batch without sharing an encoder.
+     * @param frames are the frame payloads.
+     * @return the encoded batch payload.
+     */
+    public static byte[] encodeBatch(List<byte[]> frames) {
+        int length = 1 + varIntLength(frames.size());
+        for (byte[] frame : frames) {
+            length += varIntLength(frame.length) + frame.length;
+        }
+        byte[] batch = new byte[length];
+        batch[0] = WireProtocol.TAG_BATCH;
+        int offset = putVarInt(batch, 1, frames.size());
+        for (byte[] frame : frames) {
+            offset = putVarInt(batch, offset, frame.length);
+            System.arraycopy(frame, 0, batch, offset, frame.length);
+            offset += frame.length;
+        }
+        return batch;
+    }
+
+    /**
+     * Encodes a sequence mark, appended by the writer threads to the batches holding broadcasts.
+     * Doesn't use the buffer of the encoder, like {@link #encodeBatch(List)}.
+     * @param sequence is the sequence number of the last broadcast before the mark.
+     * @return the encoded mark payload.
+     */
+    public static byte[] encodeSequenceMark(long sequence) {
+        byte[] mark = new byte[1 + varIntLength(sequence)];
+        mark[0] = WireProtocol.TAG_SEQUENCE_MARK;
+        putVarInt(mark, 1, sequence);
+        return mark;
+    }
+
+    /**
+     * Calculates the number of bytes of an unsigned varint.
+     * @param value is the value.
+     * @return the number of bytes.
+     */
+    private static int varIntLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Puts an unsigned varint into an array.
+     * @param array is the array.
+     * @param offset is where to put the varint.
+     * @param value is the value.
+     * @return the offset after the varint.
+     */
+    private static int putVarInt(byte[] array, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            array[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        array[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Writes a JoinRoom, with the session and the resume point only if it has them.
+     * @param join is the JoinRoom to write.
+     */
+    private void writeJoinRoom(JoinRoom join) {
+        if (join.getSession() == ResumePoint.NO_SESSION && join.getHistory() == ResumePoint.NO_HISTORY) {
+            writeByte(WireProtocol.TAG_JOIN_ROOM);
+        } else {
+            writeByte(WireProtocol.TAG_RESUME_ROOM);
+            writeVarLong(join.getSession());
+            writeVarLong(join.getHistory());
+            writeVarLong(join.getSequence());
+        }
+        writeBytes(join.getRoom().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a Shape, starting with its type tag and the attributes common to all Shapes.
+     * @param shape is the Shape to write.
+     */
+    private void writeShape(Shape shape) {
+        if (shape instanceof RectangleShape) {
+            RectangleShape rectangle = (RectangleShape) shape;
+            writeHeader(WireProtocol.TAG_RECTANGLE, shape);
+            writeEndPoints(rectangle.getStartPoint(), rectangle.getEndPoint());
+        } else if (shape instanceof OvalShape) {
+            OvalShape oval = (OvalShape) shape;
+            writeHeader(WireProtocol.TAG_OVAL, shape);
+            writeEndPoints(oval.getStartPoint(), oval.getEndPoint());
+        } else if (shape instanceof LineShape) {
+            LineShape line = (LineShape) shape;
+            writeHeader(WireProtocol.TAG_LINE, shape);
+            writeEndPoints(line.getStartPoint(), line.getEndPoint());
+        } else if (shape instanceof FreehandShape) {
+            FreehandShape freehand = (FreehandShape) shape;
+            writeHeader(WireProtocol.TAG_FREEHAND, shape);
+            int count = freehand.getPointCount();
+            writeVarLong(count);
+            int prevX = 0;
+            int prevY = 0;
+            for (int i = 0; i < count; i++) {
+                int x = freehand.getX(i);
+                int y = freehand.getY(i);
+                writeSignedVarInt(x - prevX);
+                writeSignedVarInt(y - prevY);
+                prevX = x;
+                prevY = y;
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported shape: " + shape.getClass().getName());
+        }
+    }
+
+    /**
+     * Writes a stroke segment. BEGIN carries the color and thickness, BEGIN and APPEND carry points.
+     * @param segment is the segment to write.
+     */
+    private void writeStrokeSegment(StrokeSegment segment) {
+        switch (segment.getKind()) {
+            case BEGIN:
+                writeByte(WireProtocol.TAG_STROKE_BEGIN);
+                writeVarLong(segment.getShapeId());
+                writeInt(segment.getColor().getRGB());
+                writeVarLong(segment.getThickness());
+                writePoints(segment.getPoints());
+                break;
+            case APPEND:
+                writeByte(WireProtocol.TAG_STROKE_APPEND);
+                writeVarLong(segment.getShapeId());
+                writePoints(segment.getPoints());
+                break;
+            default:
+                writeByte(WireProtocol.TAG_STROKE_END);
+                writeVarLong(segment.getShapeId());
+                break;
+        }
+    }
+
+    /**
+     * Writes a shape update. BEGIN carries the whole shape, MOVE only the id and the end point.
+     * @param update is the update to write.
+     */
+    private void writeShapeUpdate(ShapeUpdate update) {
+        if (update.getKind() == ShapeUpdate.Kind.BEGIN) {
+            writeByte(WireProtocol.TAG_SHAPE_BEGIN);
+            writeShape(update.getShape());
+        } else {
+            writeByte(WireProtocol.TAG_SHAPE_MOVE);
+            writeVarLong(update.getShapeId());
+            writeSignedVarInt(update.getEndPoint().x);
+            writeSignedVarInt(update.getEndPoint().y);
+        }
+    }
+
+    /**
+     * Writes a count followed by points as deltas to the previous point.
+     * @param points are the points as x and y pairs.
+     */
+    private void writePoints(int[] points) {
+        writeVarLong(points.length / 2);
+        int prevX = 0;
+        int prevY = 0;
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            writeSignedVarInt(points[i] - prevX);
+            writeSignedVarInt(points[i + 1] - prevY);
+            prevX = points[i];
+            prevY = points[i + 1];
+        }
+    }
+
+    /**
+     * Writes the type tag, id, color and thickness of a Shape.
+     * @param tag is the type tag.
+     * @param shape is the Shape.
+     */
+    private void writeHeader(byte tag, Shape shape) {
+        writeByte(tag);
+        writeVarLong(shape.getId());
+        writeInt(shape.getColor().getRGB());
+        writeVarLong(shape.getThickness());
+    }
+
+    /**
+     * Writes the start point followed by the end point as a delta to the start point.
+     * @param start is the start point.
+     * @param end is the end point.
+     */
+    private void writeEndPoints(Point start, Point end) {
+        if (start == null || end == null) {
+            throw new IllegalArgumentException("Shape has no start or end point");
+        }
+        writeSignedVarInt(start.x);
+        writeSignedVarInt(start.y);
+        writeSignedVarInt(end.x - start.x);
+        writeSignedVarInt(end.y - start.y);
+    }
+
+    /**
+     * Writes an int as a zigzag encoded varint, so small negative values stay small.
+     * @param value is the value.
+     */
+    private void writeSignedVarInt(int value) {
+        writeVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes an unsigned varint, seven bits per byte.
+     * @param value is the value.
+     */
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes an int as four big-endian bytes.
+     * @param value is the value.
+     */
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes raw bytes.
+     * @param bytes are the bytes.
+     */
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes a single byte.
+     * @param value is the value.
+     */
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    /**
+     * Grows the buffer if needed.
+     * @param extra is the number of bytes about to be written.
+     */
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import se.miun.dt176g.xxxxyyyy.reactive.support.WireProtocol;
+
+import java.io.*;
+
+/**
+ * <h1>FrameInputStream</h1>
+ * Reads length-prefixed binary frames from an underlying stream, replacing ObjectInputStream.
+ * The stream header is read and validated on construction.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class FrameInputStream extends FilterInputStream {
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final DataInputStream dataInput;
+
+    /**
+     * Constructor which reads and validates the stream header.
+     * @param in is the underlying stream.
+     * @throws IOException if the header could not be read or is not supported.
+     */
+    public FrameInputStream(InputStream in) throws IOException {
+        super(new BufferedInputStream(in));
+        dataInput = new DataInputStream(this.in);
+        if (dataInput.readInt() != WireProtocol.MAGIC) {
+            throw new StreamCorruptedException("Invalid stream header");
+        }
+        int version = dataInput.readUnsignedByte();
+        if (version != WireProtocol.VERSION) {
+            throw new StreamCorruptedException("Unsupported protocol version: " + version);
+        }
+    }
+
+    /**
+     * Reads and decodes the next frame, blocking until it is available.
+     * @return a Shape or a control String.
+     * @throws EOFException if the stream ended.
+     * @throws IOException if the frame could not be read or decoded.
+     */
+    public Object readMessage() throws IOException {
+        return decoder.decode(readFrame());
+    }
+
+    /**
+     * Reads the payload of the next frame, blocking until it is available.
+     * @return the payload.
+     * @throws EOFException if the stream ended.
+     * @throws IOException if the frame could not be read.
+     */
+    public byte[] readFrame() throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28) {
+                throw new StreamCorruptedException("Malformed frame length");
+            }
+            int b = dataInput.readUnsignedByte(); // Throws EOFException at the end of the stream.
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length <= 0 || length > WireProtocol.MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("Invalid frame length: " + length);
+        }
+        byte[] payload = new byte[length];
+        dataInput.readFully(payload);
+        return payload;
+    }
+}
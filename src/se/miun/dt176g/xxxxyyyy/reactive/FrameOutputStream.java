@@ -0,0 +1,55 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import se.miun.dt176g.xxxxyyyy.reactive.support.WireProtocol;
+
+import java.io.*;
+
+/**
+ * <h1>FrameOutputStream</h1>
+ * Writes length-prefixed binary frames to an underlying stream, replacing ObjectOutputStream.
+ * The stream header with the magic bytes and protocol version is written on construction.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class FrameOutputStream extends FilterOutputStream {
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final DataOutputStream dataOutput;
+
+    /**
+     * Constructor which writes and flushes the stream header.
+     * @param out is the underlying stream.
+     * @throws IOException if the header could not be written.
+     */
+    public FrameOutputStream(OutputStream out) throws IOException {
+        super(new BufferedOutputStream(out));
+        dataOutput = new DataOutputStream(this.out);
+        dataOutput.writeInt(WireProtocol.MAGIC);
+        dataOutput.writeByte(WireProtocol.VERSION);
+        flush();
+    }
+
+    /**
+     * Encodes and writes a message as one frame.
+     * @param message is a Shape or a control String.
+     * @throws IOException if the frame could not be written.
+     */
+    public void writeMessage(Object message) throws IOException {
+        writeFrame(encoder.encode(message));
+    }
+
+    /**
+     * Writes an already encoded payload as one frame, so a payload can be encoded once and sent to many peers.
+     * @param payload is the encoded payload.
+     * @throws IOException if the frame could not be written.
+     */
+    public synchronized void writeFrame(byte[] payload) throws IOException {
+        int length = payload.length;
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(payload);
+    }
+}
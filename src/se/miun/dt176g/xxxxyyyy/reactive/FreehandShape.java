@@ -1,33 +1,42 @@
 package se.miun.dt176g.xxxxyyyy.reactive;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * <h1>FreehandShape</h1> Creates a Freehand-object.
  * Concrete class which extends Shape, representing a freehand drawing.
+ * The path is stored in growable arrays of primitive coordinates rather than as Point objects.
  * @author 	Emma Pesjak
  * @version 1.0
  * @since 	2023-09-07
  */
 public class FreehandShape extends Shape implements Serializable {
-    private final List<Point> path; // Store the points for drawing the freehand shape.
+    private int[] xs; // Store the points for drawing the freehand shape.
+    private int[] ys;
+    private int pointCount = 0;
     private final Color color;
     private final int thickness;
+    private int minX = Integer.MAX_VALUE; // Bounds of the points, updated as points are added.
+    private int minY = Integer.MAX_VALUE;
+    private int maxX = Integer.MIN_VALUE;
+    private int maxY = Integer.MIN_VALUE;
     private static final long serialVersionUID = 1L;
 
     /**
      * Constructor that sets the color and thickness of the rectangle.
-     * It also creates the list of points of the path.
+     * It also creates the arrays of points of the path.
      * @param color is the color.
      * @param thickness is the thickness.
      */
     public FreehandShape(Color color, int thickness) {
         this.color = color;
         this.thickness = thickness;
-        path = new ArrayList<>();
+        xs = new int[16];
+        ys = new int[16];
     }
 
     /**
@@ -36,7 +45,123 @@ public class FreehandShape extends Shape implements Serializable {
      * @param y is the y coordinate.
      */
     public void addPoint(int x, int y) {
-        path.add(new Point(x, y));
+        ensureCapacity(pointCount + 1);
+        xs[pointCount] = x;
+        ys[pointCount] = y;
+        pointCount++;
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+    }
+
+    /**
+     * Adds points to the path.
+     * @param points are the points as x and y pairs.
+     */
+    public void addPoints(int[] points) {
+        ensureCapacity(pointCount + points.length / 2);
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            addPoint(points[i], points[i + 1]);
+        }
+    }
+
+    /**
+     * Removes the points after the given number of points from the path, so they can be replaced.
+     * @param count is the number of points to keep.
+     */
+    public void truncate(int count) {
+        if (count >= pointCount) {
+            return;
+        }
+        pointCount = Math.max(0, count);
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < pointCount; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+    }
+
+    /**
+     * Getter for the number of points in the path.
+     * @return the number of points.
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Getter for the x coordinate of a point in the path.
+     * @param index is the index of the point.
+     * @return the x coordinate.
+     */
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Getter for the y coordinate of a point in the path.
+     * @param index is the index of the point.
+     * @return the y coordinate.
+     */
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getThickness() {
+        return thickness;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Rectangle getBounds() {
+        if (pointCount == 0) {
+            return new Rectangle();
+        }
+        return inflate(new Rectangle(minX, minY, maxX - minX, maxY - minY), thickness);
+    }
+
+    /**
+     * Getter for the bounds of the part of the path starting at a given point, used for repainting
+     * only the newly added part of a stroke.
+     * @param fromIndex is the index of the first point.
+     * @return the bounds, empty if there are no such points.
+     */
+    public Rectangle getBounds(int fromIndex) {
+        if (fromIndex >= pointCount) {
+            return new Rectangle();
+        }
+        int start = Math.max(0, fromIndex);
+        int x1 = xs[start];
+        int y1 = ys[start];
+        int x2 = x1;
+        int y2 = y1;
+        for (int i = start + 1; i < pointCount; i++) {
+            x1 = Math.min(x1, xs[i]);
+            y1 = Math.min(y1, ys[i]);
+            x2 = Math.max(x2, xs[i]);
+            y2 = Math.max(y2, ys[i]);
+        }
+        return inflate(new Rectangle(x1, y1, x2 - x1, y2 - y1), thickness);
     }
 
     /**
@@ -47,18 +172,36 @@ public class FreehandShape extends Shape implements Serializable {
         // Cast to Graphics2D to be able to set the stroke size.
         Graphics2D g2d = (Graphics2D) g;
 
-        // Set the color and stroke (thickness) for drawing.
+        // Set the color and stroke (thickness) for drawing, with round joins so sharp turns don't spike.
         g2d.setColor(color);
-        g2d.setStroke(new BasicStroke(thickness));
-
-        // Traverse the path, drawing it.
-        if (path.size() >= 2) {
-            Point prevPoint = path.get(0);
-            for (int i = 1; i < path.size(); i++) {
-                Point currentPoint = path.get(i);
-                g2d.drawLine(prevPoint.x, prevPoint.y, currentPoint.x, currentPoint.y);
-                prevPoint = currentPoint;
-            }
+        g2d.setStroke(new BasicStroke(thickness, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_ROUND));
+
+        // Draw the whole path in one call.
+        if (pointCount >= 2) {
+            g2d.drawPolyline(xs, ys, pointCount);
+        }
+    }
+
+    /**
+     * Grows the arrays of points if needed.
+     * @param capacity is the number of points that must fit.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > xs.length) {
+            int newLength = Math.max(capacity, xs.length * 2);
+            xs = Arrays.copyOf(xs, newLength);
+            ys = Arrays.copyOf(ys, newLength);
         }
     }
+
+    /**
+     * Trims the unused capacity of the arrays before the shape is serialized.
+     * @param out is the stream.
+     * @throws IOException if writing fails.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        xs = Arrays.copyOf(xs, pointCount);
+        ys = Arrays.copyOf(ys, pointCount);
+        out.defaultWriteObject();
+    }
 }
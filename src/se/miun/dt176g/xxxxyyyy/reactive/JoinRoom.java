@@ -0,0 +1,72 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>JoinRoom</h1>
+ * The first message a client sends, naming the room whose drawing it wants to share.
+ * A client that has been in the room before also sends the resume point it got to, so only the messages it
+ * missed are sent, and the session it was handed out there. The room knows which client id it handed out with the
+ * session, so the messages the client sent itself are left out, without trusting the client to name its own id.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class JoinRoom {
+    private final String room;
+    private final long session;
+    private final long history;
+    private final long sequence;
+
+    /**
+     * Constructor which sets the name of the room, for a client that wants the whole drawing.
+     * @param room is the name of the room.
+     */
+    public JoinRoom(String room) {
+        this(room, ResumePoint.NO_SESSION, ResumePoint.NO_HISTORY, 0);
+    }
+
+    /**
+     * Constructor which sets the name of the room, the session of the client and where to resume from.
+     * @param room is the name of the room.
+     * @param session is the session of the last resume point, or {@link ResumePoint#NO_SESSION}.
+     * @param history is the history of the last resume point, or {@link ResumePoint#NO_HISTORY}.
+     * @param sequence is the sequence number of the last message the client got.
+     */
+    public JoinRoom(String room, long session, long history, long sequence) {
+        this.room = room;
+        this.session = session;
+        this.history = history;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Getter for the name of the room.
+     * @return the name of the room.
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * Getter for the session the client was handed out when it last joined the room.
+     * @return the session, or {@link ResumePoint#NO_SESSION}.
+     */
+    public long getSession() {
+        return session;
+    }
+
+    /**
+     * Getter for the history the client wants to resume.
+     * @return the history, or {@link ResumePoint#NO_HISTORY} if the client wants the whole drawing.
+     */
+    public long getHistory() {
+        return history;
+    }
+
+    /**
+     * Getter for the sequence number of the last message the client got.
+     * @return the sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -47,6 +47,51 @@ public class LineShape extends Shape implements Serializable {
         this.endPoint = endPoint;
     }
 
+    /**
+     * Getter for the start point.
+     * @return the start point.
+     */
+    public Point getStartPoint() {
+        return startPoint;
+    }
+
+    /**
+     * Getter for the end point.
+     * @return the end point.
+     */
+    public Point getEndPoint() {
+        return endPoint;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getThickness() {
+        return thickness;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Rectangle getBounds() {
+        if (startPoint == null || endPoint == null) {
+            return new Rectangle();
+        }
+        Rectangle bounds = new Rectangle(startPoint);
+        bounds.add(endPoint);
+        return inflate(bounds, thickness);
+    }
+
     /**
      * {@inheritDoc}
      */
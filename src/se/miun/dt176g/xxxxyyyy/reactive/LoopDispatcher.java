@@ -0,0 +1,79 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <h1>LoopDispatcher</h1>
+ * Stages work for an event loop, such as applying received messages, and runs everything staged so far in a
+ * single task on the loop, in the order it was staged. The loop is the EDT by default, where the work staged
+ * within a frame interval is run together. Since the repaints requested by the work are coalesced by Swing,
+ * a burst of messages ends up as one task and one repaint instead of one of each per message. A headless server
+ * stages its work for its relay loop instead.
+ * The staged work and the time it waits for the event loop are counted in {@link Metrics}.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class LoopDispatcher {
+    private final Queue<Runnable> staged = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Metrics metrics = Metrics.get();
+    private volatile long scheduledAt; // When the scheduled task was scheduled, for the dispatch lag.
+    private final Scheduler scheduler;
+    private final long intervalMs;
+
+    /**
+     * Constructor which stages work for the EDT, once per frame interval.
+     */
+    public LoopDispatcher() {
+        this(SwingScheduler.EDT, Constants.EDT_BATCH_INTERVAL_MS);
+    }
+
+    /**
+     * Constructor which sets the event loop to stage work for.
+     * @param scheduler is the scheduler of the event loop.
+     * @param intervalMs is how long to wait for more work before running it, 0 to run it as soon as possible.
+     */
+    public LoopDispatcher(Scheduler scheduler, long intervalMs) {
+        this.scheduler = scheduler;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Stages work for the event loop, scheduling a task to run it unless one is already scheduled.
+     * May be called from any thread.
+     * @param work is the work.
+     */
+    public void dispatch(Runnable work) {
+        staged.add(work);
+        metrics.staged(1);
+        if (scheduled.compareAndSet(false, true)) {
+            scheduledAt = System.nanoTime();
+            if (intervalMs > 0) {
+                scheduler.scheduleDirect(this::drain, intervalMs, TimeUnit.MILLISECONDS);
+            } else {
+                // Without a delay, so the work isn't handed over by a timer thread first.
+                scheduler.scheduleDirect(this::drain);
+            }
+        }
+    }
+
+    /**
+     * Runs all staged work, on the event loop.
+     */
+    private void drain() {
+        metrics.record(Metrics.Timing.DISPATCH_LAG, scheduledAt);
+        scheduled.set(false);
+        Runnable work;
+        while ((work = staged.poll()) != null) {
+            metrics.staged(-1);
+            work.run();
+        }
+    }
+}
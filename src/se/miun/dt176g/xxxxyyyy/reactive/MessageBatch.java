@@ -0,0 +1,31 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.util.List;
+
+/**
+ * <h1>MessageBatch</h1>
+ * Messages that were queued for a peer at the same time and sent together in one frame,
+ * so the receiver can apply them in one go.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class MessageBatch {
+    private final List<Object> messages;
+
+    /**
+     * Constructor which sets the messages of the batch.
+     * @param messages are the messages, in the order they were sent.
+     */
+    public MessageBatch(List<Object> messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * Getter for the messages of the batch.
+     * @return the messages, in the order they were sent.
+     */
+    public List<Object> getMessages() {
+        return messages;
+    }
+}
@@ -0,0 +1,334 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * <h1>Metrics</h1>
+ * Counters and timings of the process, shared by the server, the clients and their connections. They are
+ * registered with JMX under the {@value #DOMAIN} domain, and sampled periodically to compute the rates and the
+ * timings of the last interval. With the metrics dump system property set to "true", every sample is also
+ * printed to standard output. Recording never blocks, so it can be done on the event loops.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class Metrics implements MetricsMXBean {
+    public static final String DOMAIN = "se.miun.dt176g.xxxxyyyy.reactive";
+    private static Metrics instance;
+    private final ConnectionMetrics totals = new ConnectionMetrics("all", this::getTotalQueueDepth, null);
+    private final TimeHistogram[] timings = new TimeHistogram[Timing.values().length];
+    private final Map<ConnectionMetrics, ObjectName> connections = new ConcurrentHashMap<>();
+    private final AtomicLong nextConnectionId = new AtomicLong(0);
+    private final AtomicInteger edtBacklog = new AtomicInteger(0);
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final boolean dump = Boolean.getBoolean(Constants.METRICS_DUMP_PROPERTY);
+    private long lastSample = System.nanoTime();
+
+    /**
+     * The timings that are recorded.
+     */
+    public enum Timing {
+        ENCODE, DECODE, FAN_OUT, DISPATCH_LAG, REPAINT
+    }
+
+    /**
+     * Constructor which creates the histograms, use {@link #get()} for the shared instance.
+     */
+    private Metrics() {
+        for (int i = 0; i < timings.length; i++) {
+            timings[i] = new TimeHistogram();
+        }
+    }
+
+    /**
+     * Getter for the shared instance, which is registered with JMX and starts sampling when first used.
+     * @return the metrics.
+     */
+    public static synchronized Metrics get() {
+        if (instance == null) {
+            instance = new Metrics();
+            instance.register(instance, DOMAIN + ":type=Metrics");
+            long interval = Long.getLong(Constants.METRICS_INTERVAL_PROPERTY, Constants.METRICS_INTERVAL_S);
+            Schedulers.single().schedulePeriodicallyDirect(instance::sample, interval, interval, TimeUnit.SECONDS);
+        }
+        return instance;
+    }
+
+    /**
+     * Records the time since a start time.
+     * @param timing is what was timed.
+     * @param startNanos is the start time from {@link System#nanoTime()}.
+     */
+    public void record(Timing timing, long startNanos) {
+        timings[timing.ordinal()].recordSince(startNanos);
+    }
+
+    /**
+     * Changes the number of tasks staged for the event loops.
+     * @param delta is the number of tasks staged, or minus the number of tasks run.
+     */
+    public void staged(int delta) {
+        edtBacklog.addAndGet(delta);
+    }
+
+    /**
+     * Creates the counters of a connection and registers them with JMX until it is closed.
+     * @param address is the address of the other end of the connection.
+     * @param queueDepth gives the number of frames in the outbound queue of the connection.
+     * @return the counters.
+     */
+    public ConnectionMetrics openConnection(String address, IntSupplier queueDepth) {
+        ConnectionMetrics connection = new ConnectionMetrics(address, queueDepth, this);
+        ObjectName name = register(connection, DOMAIN + ":type=Connection,id=" + nextConnectionId.incrementAndGet()
+                + ",address=" + ObjectName.quote(address));
+        if (name != null) {
+            connections.put(connection, name);
+        }
+        return connection;
+    }
+
+    /**
+     * Unregisters the counters of a closed connection, it is safe to call this more than once.
+     * @param connection are the counters.
+     */
+    public void closeConnection(ConnectionMetrics connection) {
+        ObjectName name = connections.remove(connection);
+        if (name != null) {
+            try {
+                mBeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already unregistered.
+            }
+        }
+    }
+
+    /**
+     * Counts a received frame, called by the counters of the connection.
+     * @param bytes is the size of the frame.
+     */
+    void receivedFrame(int bytes) {
+        totals.receivedFrame(bytes);
+    }
+
+    /**
+     * Counts received messages, called by the counters of the connection.
+     * @param count is the number of messages.
+     */
+    void receivedMessages(int count) {
+        totals.receivedMessages(count);
+    }
+
+    /**
+     * Counts a message queued for sending, called by the counters of the connection.
+     * @param bytes is the size of its frame.
+     */
+    void sent(int bytes) {
+        totals.sent(bytes);
+    }
+
+    /**
+     * Registers an MBean, reporting and ignoring failures so the metrics never stop the application.
+     * @param mBean is the MBean.
+     * @param name is its object name.
+     * @return the object name, or null if it couldn't be registered.
+     */
+    private ObjectName register(Object mBean, String name) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            mBeanServer.registerMBean(mBean, objectName);
+            return objectName;
+        } catch (JMException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Computes the rates and timings of the interval since the last sample, and prints them if dumping.
+     */
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastSample) / (double) TimeUnit.SECONDS.toNanos(1);
+        lastSample = now;
+        totals.sample(seconds);
+        for (ConnectionMetrics connection : connections.keySet()) {
+            connection.sample(seconds);
+        }
+        for (TimeHistogram timing : timings) {
+            timing.sample();
+        }
+        if (dump) {
+            StringBuilder text = new StringBuilder(String.format("metrics: %d connections, edt backlog %d%n",
+                    getConnections(), getEdtBacklog()));
+            text.append("  ").append(totals).append(System.lineSeparator());
+            for (Timing timing : Timing.values()) {
+                text.append(String.format("  %-12s %s%n", timing.name().toLowerCase(),
+                        timings[timing.ordinal()].getLast()));
+            }
+            for (ConnectionMetrics connection : connections.keySet()) {
+                text.append("  ").append(connection).append(System.lineSeparator());
+            }
+            System.out.print(text);
+        }
+    }
+
+    /**
+     * Sums the outbound queues of the open connections.
+     * @return the number of queued frames.
+     */
+    private int getTotalQueueDepth() {
+        int depth = 0;
+        for (ConnectionMetrics connection : connections.keySet()) {
+            depth += connection.getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getConnections() {
+        return connections.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEdtBacklog() {
+        return edtBacklog.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TimeHistogram.Stats getEncodeTime() {
+        return timings[Timing.ENCODE.ordinal()].getLast();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TimeHistogram.Stats getDecodeTime() {
+        return timings[Timing.DECODE.ordinal()].getLast();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TimeHistogram.Stats getFanOutTime() {
+        return timings[Timing.FAN_OUT.ordinal()].getLast();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TimeHistogram.Stats getDispatchLag() {
+        return timings[Timing.DISPATCH_LAG.ordinal()].getLast();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TimeHistogram.Stats getRepaintTime() {
+        return timings[Timing.REPAINT.ordinal()].getLast();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getAddress() {
+        return totals.getAddress();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesIn() {
+        return totals.getMessagesIn();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMessagesOut() {
+        return totals.getMessagesOut();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesIn() {
+        return totals.getBytesIn();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesOut() {
+        return totals.getBytesOut();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMessagesInPerSecond() {
+        return totals.getMessagesInPerSecond();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMessagesOutPerSecond() {
+        return totals.getMessagesOutPerSecond();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getBytesInPerSecond() {
+        return totals.getBytesInPerSecond();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getBytesOutPerSecond() {
+        return totals.getBytesOutPerSecond();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueueDepth() {
+        return totals.getQueueDepth();
+    }
+}
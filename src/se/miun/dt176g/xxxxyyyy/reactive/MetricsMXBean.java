@@ -0,0 +1,54 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>MetricsMXBean</h1>
+ * Management interface of the counters and timings of the whole process, registered with JMX.
+ * The rates and timings are taken over the last sampling interval, the counters since the start.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public interface MetricsMXBean extends ConnectionMetricsMXBean {
+
+    /**
+     * Getter for the number of open connections.
+     * @return the number of connections.
+     */
+    int getConnections();
+
+    /**
+     * Getter for the number of tasks staged for the event loops but not run yet.
+     * @return the number of tasks.
+     */
+    int getEdtBacklog();
+
+    /**
+     * Getter for the time it takes to encode a message that is sent.
+     * @return the timings.
+     */
+    TimeHistogram.Stats getEncodeTime();
+
+    /**
+     * Getter for the time it takes to decode a received frame.
+     * @return the timings.
+     */
+    TimeHistogram.Stats getDecodeTime();
+
+    /**
+     * Getter for the time it takes to queue a broadcast for all the peers of a room.
+     * @return the timings.
+     */
+    TimeHistogram.Stats getFanOutTime();
+
+    /**
+     * Getter for the time from staging work for an event loop until it starts running.
+     * @return the timings.
+     */
+    TimeHistogram.Stats getDispatchLag();
+
+    /**
+     * Getter for the time it takes to paint a DrawingPanel.
+     * @return the timings.
+     */
+    TimeHistogram.Stats getRepaintTime();
+}
@@ -0,0 +1,332 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+import se.miun.dt176g.xxxxyyyy.reactive.support.WireProtocol;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <h1>NioPeer</h1>
+ * A client connected to a {@link NioServer}. Reads and writes are done on the selector thread without blocking.
+ * Idle peers only hold a small read buffer, outgoing bytes are gathered in the write buffer shared
+ * by all peers and only a partially written remainder is kept per peer. Frames queued since the last write
+ * are sent as one batch frame. A peer may send frames no larger than a limit well below the protocol's, and the
+ * read buffer only grows with the bytes of a frame that have arrived.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class NioPeer implements Peer {
+    private static final int INITIAL_READ_BUFFER_SIZE = 1024;
+    private static final int HEADER_LENGTH = 5;
+    // No client sends anything near the protocol's limit, a whole stroke is the largest frame.
+    private static final int MAX_FRAME_LENGTH = Math.min(WireProtocol.MAX_FRAME_LENGTH, Math.max(
+            INITIAL_READ_BUFFER_SIZE, Integer.getInteger(Constants.MAX_PEER_FRAME_LENGTH_PROPERTY,
+                    Constants.MAX_PEER_FRAME_LENGTH)));
+    private final NioServer server;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final OutboundQueue queue;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(true);
+    private final ConnectionMetrics metrics;
+    private volatile boolean closed = false;
+    // The fields below are only used on the selector thread.
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    private ByteBuffer pendingOutput;
+    private byte[] carriedFrame;
+    private boolean headerReceived = false;
+    private boolean headerSent = false;
+    private boolean closeWhenDrained = false;
+
+    /**
+     * Constructor which creates the outbound queue of the peer.
+     * @param server is the server the peer is connected to.
+     * @param channel is the channel of the peer.
+     * @param key is the selection key of the channel.
+     * @param queueCapacity is the maximum number of queued frames.
+     * @param overflowPolicy is what to do when the queue is full.
+     */
+    public NioPeer(NioServer server, SocketChannel channel, SelectionKey key, int queueCapacity,
+                   OverflowPolicy overflowPolicy) {
+        this.server = server;
+        this.channel = channel;
+        this.key = key;
+        this.queue = new OutboundQueue(queueCapacity, overflowPolicy);
+        metrics = Metrics.get().openConnection(String.valueOf(channel.socket().getRemoteSocketAddress()), queue::size);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(long key, byte[] frame) {
+        send(key, OutboundQueue.NO_SEQUENCE, frame);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(long key, long sequence, byte[] frame) {
+        metrics.sent(frame.length);
+        if (!queue.offer(key, sequence, frame)) {
+            // The overflow policy says this peer can't keep up.
+            queue.discard();
+            server.disconnectPeer(this);
+            return;
+        }
+        if (writeScheduled.compareAndSet(false, true)) {
+            server.runOnSelector(this::enableWrite);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close(boolean drain) {
+        closed = true;
+        Metrics.get().closeConnection(metrics);
+        if (!drain) {
+            queue.discard();
+        }
+        queue.close();
+        server.runOnSelector(() -> {
+            if (drain && hasPendingOutput()) {
+                closeWhenDrained = true;
+                enableWrite();
+            } else {
+                closeChannel();
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Reads what is available and handles every complete frame, until the peer is closed.
+     */
+    void read() {
+        if (closed) {
+            stopReading();
+            return;
+        }
+        try {
+            if (channel.read(readBuffer) < 0) {
+                server.disconnectPeer(this);
+                return;
+            }
+            readBuffer.flip();
+            if (!headerReceived) {
+                if (readBuffer.remaining() < HEADER_LENGTH) {
+                    readBuffer.compact();
+                    return;
+                }
+                if (readBuffer.getInt() != WireProtocol.MAGIC || readBuffer.get() != WireProtocol.VERSION) {
+                    throw new StreamCorruptedException("Invalid stream header");
+                }
+                headerReceived = true;
+            }
+            int needed = 0;
+            while (readBuffer.hasRemaining()) {
+                int start = readBuffer.position();
+                int length = readLength();
+                if (length < 0 || readBuffer.remaining() < length) {
+                    // Incomplete frame, wait for more bytes.
+                    needed = length < 0 ? 0 : readBuffer.position() - start + length;
+                    readBuffer.position(start);
+                    break;
+                }
+                long decodeStart = System.nanoTime();
+                Object message = server.getFrameDecoder().decode(readBuffer.array(),
+                        readBuffer.arrayOffset() + readBuffer.position(), length);
+                Metrics.get().record(Metrics.Timing.DECODE, decodeStart);
+                metrics.receivedFrame(length);
+                readBuffer.position(readBuffer.position() + length);
+                server.handlePeerMessage(this, message);
+                if (closed) {
+                    stopReading(); // Disconnected by the message, the frames after it are dropped.
+                    return;
+                }
+            }
+            readBuffer.compact();
+            if (needed > readBuffer.capacity() && readBuffer.position() == readBuffer.capacity()) {
+                // Grow towards the frame being read as its bytes arrive, not to its declared length at once.
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(needed, readBuffer.capacity() * 2));
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            } else if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_READ_BUFFER_SIZE) {
+                // Shrink back once a large frame is handled.
+                readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            server.disconnectPeer(this);
+        }
+    }
+
+    /**
+     * Writes as much queued output as the socket accepts, and drops write interest once drained.
+     */
+    void write() {
+        try {
+            while (true) {
+                ByteBuffer output = pendingOutput != null ? pendingOutput : fillWriteBuffer();
+                pendingOutput = null;
+                if (output == null) {
+                    break;
+                }
+                channel.write(output);
+                if (output.hasRemaining()) {
+                    // The socket is full, keep the remainder until it is writable again.
+                    pendingOutput = ByteBuffer.allocate(output.remaining()).put(output).flip();
+                    return;
+                }
+            }
+            if (closeWhenDrained) {
+                closeChannel();
+                return;
+            }
+            key.interestOps(closed ? 0 : SelectionKey.OP_READ);
+            writeScheduled.set(false);
+            // A frame may have been queued after the queue was found empty.
+            if (!queue.isEmpty() && writeScheduled.compareAndSet(false, true)) {
+                enableWrite();
+            }
+        } catch (IOException e) {
+            server.disconnectPeer(this);
+        }
+    }
+
+    /**
+     * Gathers the stream header and queued frames into the shared write buffer.
+     * A frame larger than the shared buffer gets a buffer of its own.
+     * @return the buffer to write, or null if there is nothing to write.
+     */
+    private ByteBuffer fillWriteBuffer() {
+        ByteBuffer buffer = server.getWriteBuffer();
+        buffer.clear();
+        if (!headerSent) {
+            buffer.putInt(WireProtocol.MAGIC);
+            buffer.put((byte) WireProtocol.VERSION);
+            headerSent = true;
+        }
+        while (true) {
+            byte[] frame = carriedFrame != null ? carriedFrame
+                    : queue.pollBatch(Constants.BATCH_MAX_FRAMES, Constants.BATCH_MAX_BYTES);
+            carriedFrame = null;
+            if (frame == null) {
+                break;
+            }
+            int needed = 5 + frame.length;
+            if (needed > buffer.remaining()) {
+                if (buffer.position() == 0) {
+                    ByteBuffer large = ByteBuffer.allocate(needed);
+                    putFrame(large, frame);
+                    return large.flip();
+                }
+                carriedFrame = frame;
+                break;
+            }
+            putFrame(buffer, frame);
+        }
+        buffer.flip();
+        return buffer.hasRemaining() ? buffer : null;
+    }
+
+    /**
+     * Puts a frame with its varint length prefix into a buffer.
+     * @param buffer is the buffer.
+     * @param frame is the frame.
+     */
+    private static void putFrame(ByteBuffer buffer, byte[] frame) {
+        int length = frame.length;
+        while ((length & ~0x7F) != 0) {
+            buffer.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+        buffer.put(frame);
+    }
+
+    /**
+     * Reads a varint frame length from the read buffer.
+     * @return the length, or -1 if the length is not complete yet.
+     * @throws StreamCorruptedException if the length is malformed or larger than a peer may send.
+     */
+    private int readLength() throws StreamCorruptedException {
+        int length = 0;
+        for (int shift = 0; shift <= 28; shift += 7) {
+            if (!readBuffer.hasRemaining()) {
+                return -1;
+            }
+            byte b = readBuffer.get();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (length <= 0 || length > MAX_FRAME_LENGTH) {
+                    throw new StreamCorruptedException("Invalid frame length: " + length);
+                }
+                return length;
+            }
+        }
+        throw new StreamCorruptedException("Malformed frame length");
+    }
+
+    /**
+     * Checks if there is output that has not been written yet.
+     * @return true if there is pending output.
+     */
+    private boolean hasPendingOutput() {
+        return !headerSent || pendingOutput != null || carriedFrame != null || !queue.isEmpty();
+    }
+
+    /**
+     * Drops read interest from the selection key of a closed peer, so the selector doesn't keep reporting it as
+     * readable until the channel is closed.
+     */
+    private void stopReading() {
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Adds write interest to the selection key.
+     */
+    private void enableWrite() {
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Closes the channel and cancels the selection key.
+     */
+    private void closeChannel() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
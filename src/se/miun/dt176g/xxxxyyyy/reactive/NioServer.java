@@ -0,0 +1,211 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <h1>NioServer</h1>
+ * Server engine built on a single {@link Selector} thread with non-blocking reads and writes,
+ * so the number of threads does not grow with the number of connected clients.
+ * Everything except the networking is inherited from {@link Server}.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class NioServer extends Server {
+    private static final long serialVersionUID = 1L;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long SHUTDOWN_GRACE_MS = 1000;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    // Only used on the selector thread, shared by all peers.
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private volatile boolean running = false;
+    private volatile long stopDeadline;
+
+    /**
+     * Constructor which uses the overflow policy from the system properties.
+     */
+    public NioServer() {
+        super();
+    }
+
+    /**
+     * Constructor which sets the overflow policy and queue capacity.
+     * @param overflowPolicy is what to do when the outbound queue of a client is full.
+     * @param queueCapacity is the capacity of the outbound queue of each client.
+     */
+    public NioServer(OverflowPolicy overflowPolicy, int queueCapacity) {
+        super(overflowPolicy, queueCapacity);
+    }
+
+    /**
+     * Constructor which sets the overflow policy and queue capacity, and whether to run headless.
+     * @param overflowPolicy is what to do when the outbound queue of a client is full.
+     * @param queueCapacity is the capacity of the outbound queue of each client.
+     * @param headless is true if the server should run without a GUI.
+     */
+    public NioServer(OverflowPolicy overflowPolicy, int queueCapacity, boolean headless) {
+        super(overflowPolicy, queueCapacity, headless);
+    }
+
+    /**
+     * Starts the server by binding the server channel and starting the selector thread.
+     */
+    @Override
+    public void startServer() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(listenPort()));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            handleServerSocketError(e);
+            return;
+        }
+        restoreDrawing();
+        running = true;
+        selectorThread = new Thread(this::runSelector, "nio-selector");
+        selectorThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Runs a task on the selector thread, waking it up if needed.
+     * @param task is the task to run.
+     */
+    void runOnSelector(Runnable task) {
+        if (Thread.currentThread() == selectorThread) {
+            task.run();
+        } else {
+            selectorTasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Getter for the decoder shared by the peers, only to be used on the selector thread.
+     * @return the decoder.
+     */
+    FrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
+    /**
+     * Getter for the write buffer shared by the peers, only to be used on the selector thread.
+     * @return the write buffer.
+     */
+    ByteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /**
+     * The selector loop, which keeps running after shutdown until the peers are drained or the grace period is over.
+     */
+    private void runSelector() {
+        while (running || (!selector.keys().isEmpty() && System.currentTimeMillis() < stopDeadline)) {
+            try {
+                selector.select(running ? 0 : 100);
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+                if (!running && serverChannel.isOpen()) {
+                    serverChannel.close();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        NioPeer peer = (NioPeer) key.attachment();
+                        if (key.isReadable()) {
+                            peer.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            peer.write();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        closeAll();
+    }
+
+    /**
+     * Accepts all pending connections and registers them with the selector.
+     * @throws IOException if accepting fails.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            // Start with write interest to send the stream header.
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            key.attach(new NioPeer(this, channel, key, getQueueCapacity(), getOverflowPolicy()));
+        }
+    }
+
+    /**
+     * Closes every channel and the selector.
+     */
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioPeer) {
+                Metrics.get().closeConnection(((NioPeer) key.attachment()).getMetrics());
+            }
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void stopAccepting() {
+        if (selector == null) {
+            return;
+        }
+        stopDeadline = System.currentTimeMillis() + SHUTDOWN_GRACE_MS;
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,335 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import se.miun.dt176g.xxxxyyyy.reactive.support.WireProtocol;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>OutboundQueue</h1>
+ * Bounded queue of encoded frames waiting to be written to one peer.
+ * Each frame carries a key, the id of the Shape it holds, which is used when the queue overflows. Only moves of
+ * previews are dropped on overflow, a frame that can't be dropped is queued beyond the capacity instead.
+ * Broadcasts also carry their sequence number in the room, and a batch holding any is followed by a sequence
+ * mark, so the peer knows where to resume from if the connection drops. Only moves are coalesced: a newer move
+ * keeps the place and the sequence number of the move it replaced, so a resuming peer may get it twice, which is
+ * harmless since it holds an absolute end point. A finished Shape drops the queued move of its preview instead and
+ * is queued last, so it never goes ahead of a clear queued before it.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class OutboundQueue {
+    /**
+     * Key for frames that must never be dropped or coalesced.
+     */
+    public static final long NO_KEY = -1;
+    /**
+     * Sequence number of frames that aren't broadcasts in a room, such as snapshots and control messages.
+     */
+    public static final long NO_SEQUENCE = 0;
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private boolean closed;
+
+    /**
+     * Constructor which sets the capacity and overflow policy.
+     * @param capacity is the maximum number of queued frames.
+     * @param overflowPolicy is what to do when the queue is full.
+     */
+    public OutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Finds the key to queue a message with. Shapes and moves of previews are keyed by the id of the shape, a
+     * newer frame can replace them since they hold the whole shape or an absolute end point.
+     * @param message is the message.
+     * @return the key, or {@link #NO_KEY}.
+     */
+    public static long keyOf(Object message) {
+        if (message instanceof Shape) {
+            return ((Shape) message).getId();
+        }
+        if (message instanceof ShapeUpdate && ((ShapeUpdate) message).getKind() == ShapeUpdate.Kind.MOVE) {
+            return ((ShapeUpdate) message).getShapeId();
+        }
+        return NO_KEY;
+    }
+
+    /**
+     * Offers a frame to the queue, applying the overflow policy if the queue is full.
+     * @param key is the id of the Shape in the frame, or {@link #NO_KEY}.
+     * @param frame is the encoded frame.
+     * @return false if the peer should be disconnected, otherwise true.
+     */
+    public boolean offer(long key, byte[] frame) {
+        return offer(key, NO_SEQUENCE, frame);
+    }
+
+    /**
+     * Offers a broadcast frame to the queue, applying the overflow policy if the queue is full.
+     * @param key is the id of the Shape in the frame, or {@link #NO_KEY}.
+     * @param sequence is the sequence number of the broadcast, or {@link #NO_SEQUENCE}.
+     * @param frame is the encoded frame.
+     * @return false if the peer should be disconnected, otherwise true.
+     */
+    public boolean offer(long key, long sequence, byte[] frame) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (entries.size() >= capacity) {
+                // Frames that can't be dropped, such as Shapes and stroke segments, may fill the queue up to twice
+                // its capacity before the peer is disconnected. It then resumes from its last sequence mark.
+                if (overflowPolicy == OverflowPolicy.DISCONNECT || entries.size() >= capacity * 2) {
+                    return false;
+                }
+                if (overflowPolicy == OverflowPolicy.COALESCE && key != NO_KEY && coalesce(key, frame)) {
+                    return true;
+                }
+                if (entries.size() >= capacity) {
+                    dropOldest();
+                }
+            }
+            entries.addLast(new Entry(key, sequence, frame));
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next frames as one frame, blocking until one is available. Once there is a frame, more frames
+     * are gathered until the limits are reached or no frame has arrived within the batch window.
+     * @param maxFrames is the maximum number of frames in a batch.
+     * @param maxBytes is the size of the frames after which no more frames are added.
+     * @param windowNanos is how long to wait for more frames.
+     * @return a single frame, a batch frame, or null if the queue is closed and empty.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public byte[] takeBatch(int maxFrames, int maxBytes, long windowNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            while (entries.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            List<Entry> batch = new ArrayList<>();
+            int bytes = gather(batch, 0, maxFrames, maxBytes);
+            long remaining = windowNanos;
+            while (remaining > 0 && !closed && !batch.isEmpty() && batch.size() < maxFrames && bytes < maxBytes
+                    && entries.isEmpty()) {
+                remaining = notEmpty.awaitNanos(remaining);
+                bytes = gather(batch, bytes, maxFrames, maxBytes);
+            }
+            return toFrame(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the queued frames as one frame without waiting.
+     * @param maxFrames is the maximum number of frames in a batch.
+     * @param maxBytes is the size of the frames after which no more frames are added.
+     * @return a single frame, a batch frame, or null if the queue is empty.
+     */
+    public byte[] pollBatch(int maxFrames, int maxBytes) {
+        lock.lock();
+        try {
+            List<Entry> batch = new ArrayList<>();
+            gather(batch, 0, maxFrames, maxBytes);
+            return toFrame(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if there are no queued frames.
+     * @return true if the queue is empty.
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return entries.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter for the number of queued frames.
+     * @return the number of frames.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue, frames already queued can still be taken.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the queue and takes out the frames still queued, so they can be sent some other way.
+     * @return the queued frames, oldest first.
+     */
+    public List<byte[]> closeAndTake() {
+        lock.lock();
+        try {
+            closed = true;
+            List<byte[]> frames = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                frames.add(entry.frame);
+            }
+            entries.clear();
+            notEmpty.signalAll();
+            return frames;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards all queued frames.
+     */
+    public void discard() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves queued frames to a batch until the limits are reached. Must be called while holding the lock.
+     * The first frame of a batch is always moved, even if it is larger than the byte limit.
+     * @param batch are the entries of the batch.
+     * @param bytes is the size of the frames already in the batch.
+     * @param maxFrames is the maximum number of frames in a batch.
+     * @param maxBytes is the size of the frames after which no more frames are added.
+     * @return the size of the frames in the batch.
+     */
+    private int gather(List<Entry> batch, int bytes, int maxFrames, int maxBytes) {
+        while (batch.size() < maxFrames && !entries.isEmpty()) {
+            Entry entry = entries.peekFirst();
+            if (!batch.isEmpty() && bytes + entry.frame.length > maxBytes) {
+                break;
+            }
+            entries.pollFirst();
+            batch.add(entry);
+            bytes += entry.frame.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Turns the entries of a batch into the frame to write, followed by a sequence mark if it holds broadcasts.
+     * @param batch are the entries of the batch.
+     * @return the only frame, a batch frame wrapping the frames, or null if there are none.
+     */
+    private static byte[] toFrame(List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return null;
+        }
+        List<byte[]> frames = new ArrayList<>(batch.size() + 1);
+        long sequence = NO_SEQUENCE;
+        for (Entry entry : batch) {
+            frames.add(entry.frame);
+            if (entry.sequence != NO_SEQUENCE) {
+                sequence = entry.sequence;
+            }
+        }
+        if (sequence != NO_SEQUENCE) {
+            frames.add(FrameEncoder.encodeSequenceMark(sequence));
+        }
+        return frames.size() == 1 ? frames.get(0) : FrameEncoder.encodeBatch(frames);
+    }
+
+    /**
+     * Coalesces a frame with the newest queued frame of the same shape, if that is a move. A move replaces it in
+     * place, while a finished Shape drops it and is left to be queued last. The scan stops at a snapshot chunk, a
+     * batch or a control frame such as a clear, which have the tags after the drawing ones, since no frame may be
+     * moved across them.
+     * @param key is the key.
+     * @param frame is the new frame.
+     * @return true if the frame replaced a queued move.
+     */
+    private boolean coalesce(long key, byte[] frame) {
+        Iterator<Entry> iterator = entries.descendingIterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.frame[0] > WireProtocol.TAG_STROKE_END) {
+                return false;
+            }
+            if (entry.key == key) {
+                if (entry.frame[0] != WireProtocol.TAG_SHAPE_MOVE) {
+                    return false;
+                }
+                if (frame[0] == WireProtocol.TAG_SHAPE_MOVE) {
+                    entry.frame = frame;
+                    return true;
+                }
+                iterator.remove();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the oldest entry that holds a move of a preview, if any. A Shape is never dropped, a later sequence
+     * mark would tell the peer it has it.
+     */
+    private void dropOldest() {
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.key != NO_KEY && entry.frame[0] == WireProtocol.TAG_SHAPE_MOVE) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * A queued frame with its key and sequence number.
+     */
+    private static class Entry {
+        private final long key;
+        private final long sequence;
+        private byte[] frame;
+
+        Entry(long key, long sequence, byte[] frame) {
+            this.key = key;
+            this.sequence = sequence;
+            this.frame = frame;
+        }
+    }
+}
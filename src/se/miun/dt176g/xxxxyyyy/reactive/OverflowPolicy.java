@@ -0,0 +1,29 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>OverflowPolicy</h1>
+ * Decides what an {@link OutboundQueue} does when a frame is offered while it is full.
+ * Only moves of previews are ever dropped, since a later move or the finished Shape supersedes them. Shapes are
+ * never dropped, so a peer that has been sent a later sequence mark still has every Shape before it, and control
+ * frames and stroke segments are never dropped or coalesced.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public enum OverflowPolicy {
+    /**
+     * Drop the oldest queued move of a preview to make room for the new frame.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Replace a queued move of the same preview with a newer one, or drop it for the finished Shape, otherwise
+     * drop the oldest move of a preview.
+     */
+    COALESCE,
+
+    /**
+     * Disconnect the peer, since it can't keep up.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,44 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>Peer</h1>
+ * Interface for the sending side of a connection to one peer, implemented by each server engine.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public interface Peer {
+
+    /**
+     * Queues a frame for sending, never blocks.
+     * @param key is the id of the Shape in the frame, or {@link OutboundQueue#NO_KEY}.
+     * @param frame is the encoded frame.
+     */
+    void send(long key, byte[] frame);
+
+    /**
+     * Queues a broadcast frame for sending, never blocks. The batch it is sent in is followed by a sequence mark.
+     * @param key is the id of the Shape in the frame, or {@link OutboundQueue#NO_KEY}.
+     * @param sequence is the sequence number of the broadcast in its room.
+     * @param frame is the encoded frame.
+     */
+    void send(long key, long sequence, byte[] frame);
+
+    /**
+     * Closes the connection, it is safe to call this more than once.
+     * @param drain is true if the already queued frames should be written first.
+     */
+    void close(boolean drain);
+
+    /**
+     * Checks if the connection has been closed, after which the messages still arriving from it are dropped.
+     * @return true if it is closed.
+     */
+    boolean isClosed();
+
+    /**
+     * Getter for the counters of the connection.
+     * @return the counters.
+     */
+    ConnectionMetrics getMetrics();
+}
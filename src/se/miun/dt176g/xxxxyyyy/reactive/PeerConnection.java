@@ -0,0 +1,170 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <h1>PeerConnection</h1>
+ * The sending side of a connection to one peer. Frames are put in a bounded {@link OutboundQueue}
+ * and written by a writer thread owned by this connection, so a slow peer never blocks the caller
+ * or the other peers. Frames queued close together are sent as one batch frame.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class PeerConnection implements Peer {
+    private static final long DRAIN_TIMEOUT_MS = 1000;
+    private final Socket socket;
+    private final FrameOutputStream outputStream;
+    private final OutboundQueue queue;
+    private final Consumer<Peer> onFailure;
+    private final Thread writerThread;
+    private final ConnectionMetrics metrics;
+    private volatile boolean closing = false;
+    private volatile byte[] unwritten; // The frame the writer failed to write, if it failed.
+
+    /**
+     * Constructor which creates the queue and the writer thread.
+     * @param socket is the socket of the peer.
+     * @param outputStream is the frame stream of the socket.
+     * @param queueCapacity is the maximum number of queued frames.
+     * @param overflowPolicy is what to do when the queue is full.
+     * @param onFailure is called if the peer fails or has to be disconnected, and is left to close it.
+     */
+    public PeerConnection(Socket socket, FrameOutputStream outputStream, int queueCapacity,
+                          OverflowPolicy overflowPolicy, Consumer<Peer> onFailure) {
+        this.socket = socket;
+        this.outputStream = outputStream;
+        this.queue = new OutboundQueue(queueCapacity, overflowPolicy);
+        this.onFailure = onFailure;
+        writerThread = new Thread(this::writeFrames, "writer-" + socket.getRemoteSocketAddress());
+        writerThread.setDaemon(true);
+        metrics = Metrics.get().openConnection(String.valueOf(socket.getRemoteSocketAddress()), queue::size);
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public void start() {
+        writerThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(long key, byte[] frame) {
+        send(key, OutboundQueue.NO_SEQUENCE, frame);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(long key, long sequence, byte[] frame) {
+        metrics.sent(frame.length);
+        if (!queue.offer(key, sequence, frame)) {
+            // The overflow policy says this peer can't keep up, closing it is left to the owner.
+            onFailure.accept(this);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Getter for the socket of the peer.
+     * @return the socket.
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close(boolean drain) {
+        closing = true;
+        Metrics.get().closeConnection(metrics);
+        if (!drain) {
+            queue.discard();
+        }
+        queue.close();
+        if (drain && Thread.currentThread() != writerThread) {
+            try {
+                writerThread.join(DRAIN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the connection without writing what is queued, and takes the queued frames back along with the frame
+     * the writer failed to write. Frames written before the connection failed can't be told apart from the ones
+     * the peer got, so they aren't taken back.
+     * @return the frames that weren't written, oldest first.
+     */
+    public List<byte[]> takeUnsent() {
+        List<byte[]> unsent = queue.closeAndTake();
+        close(false);
+        try {
+            writerThread.join(DRAIN_TIMEOUT_MS); // Stops once the socket is closed.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (unwritten != null) {
+            unsent.add(0, unwritten);
+        }
+        return unsent;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed() {
+        return closing;
+    }
+
+    /**
+     * Writer loop, batching the queued frames and flushing only when the queue runs empty.
+     */
+    private void writeFrames() {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(Constants.BATCH_WINDOW_MS);
+        byte[] frame = null;
+        try {
+            while ((frame = queue.takeBatch(Constants.BATCH_MAX_FRAMES, Constants.BATCH_MAX_BYTES, windowNanos))
+                    != null) {
+                outputStream.writeFrame(frame);
+                if (queue.isEmpty()) {
+                    outputStream.flush();
+                }
+            }
+            outputStream.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            unwritten = frame;
+            if (!closing) {
+                onFailure.accept(this);
+            }
+        }
+    }
+}
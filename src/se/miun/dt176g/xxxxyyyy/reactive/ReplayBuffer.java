@@ -0,0 +1,106 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>ReplayBuffer</h1>
+ * Ring of the last frames broadcast in a room, numbered by their sequence numbers, so a client that reconnects
+ * can be sent only the frames it missed. It is bounded both in frames and in bytes, the oldest frames are
+ * dropped first. A client that missed more than the ring holds gets a snapshot instead.
+ * Used on the event loop of the server.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ReplayBuffer {
+    private final long[] keys;
+    private final int[] origins;
+    private final byte[][] frames;
+    private final long maxBytes;
+    private long firstSequence = 1; // Sequence number of the oldest frame held.
+    private long nextSequence = 1;
+    private long bytes = 0;
+
+    /**
+     * Constructor which sets the bounds of the ring.
+     * @param capacity is the maximum number of frames held.
+     * @param maxBytes is the maximum size of the frames held, the latest frame is always held.
+     */
+    public ReplayBuffer(int capacity, long maxBytes) {
+        keys = new long[capacity];
+        origins = new int[capacity];
+        frames = new byte[capacity][];
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a broadcast frame, giving it the next sequence number.
+     * @param key is the id of the Shape in the frame, or {@link OutboundQueue#NO_KEY}.
+     * @param origin is the id of the client the message came from, or {@link Shape#NO_CLIENT}.
+     * @param frame is the encoded frame.
+     * @return the sequence number of the frame.
+     */
+    public long append(long key, int origin, byte[] frame) {
+        if (nextSequence - firstSequence == frames.length) {
+            dropOldest();
+        }
+        int slot = slotOf(nextSequence);
+        keys[slot] = key;
+        origins[slot] = origin;
+        frames[slot] = frame;
+        bytes += frame.length;
+        long sequence = nextSequence++;
+        while (bytes > maxBytes && firstSequence < sequence) {
+            dropOldest();
+        }
+        return sequence;
+    }
+
+    /**
+     * Getter for the sequence number of the last frame added.
+     * @return the sequence number, or {@link OutboundQueue#NO_SEQUENCE} if none has been added.
+     */
+    public long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Checks if all the frames after a sequence number are still held.
+     * @param sequence is the sequence number of the last frame a client got.
+     * @return true if the client can be sent the frames it missed.
+     */
+    public boolean canResume(long sequence) {
+        return sequence >= firstSequence - 1 && sequence < nextSequence;
+    }
+
+    /**
+     * Sends a peer the frames after a sequence number, except the ones that came from the client itself.
+     * @param sequence is the sequence number of the last frame the client got, see {@link #canResume(long)}.
+     * @param clientId is the id of the client, or {@link Shape#NO_CLIENT}.
+     * @param peer is the peer of the client.
+     */
+    public void replay(long sequence, int clientId, Peer peer) {
+        for (long next = sequence + 1; next < nextSequence; next++) {
+            int slot = slotOf(next);
+            if (clientId == Shape.NO_CLIENT || origins[slot] != clientId) {
+                peer.send(keys[slot], next, frames[slot]);
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest frame.
+     */
+    private void dropOldest() {
+        int slot = slotOf(firstSequence++);
+        bytes -= frames[slot].length;
+        frames[slot] = null;
+    }
+
+    /**
+     * Calculates the slot of a sequence number in the ring.
+     * @param sequence is the sequence number.
+     * @return the slot.
+     */
+    private int slotOf(long sequence) {
+        return (int) (sequence % frames.length);
+    }
+}
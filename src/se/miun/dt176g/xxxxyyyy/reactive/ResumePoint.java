@@ -0,0 +1,91 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>ResumePoint</h1>
+ * Tells a client how far into the history of its room it has got. Every message a room broadcasts that changes
+ * its drawing gets the next sequence number of the room, and the history identifies the room, so a client that
+ * reconnects can ask for the messages after the last sequence number it got instead of the whole drawing.
+ * The server sends one with the history after a client has joined, together with the client id the client is to
+ * create its Shapes with and a secret session the client resumes with, and a sequence mark without the history
+ * after each batch of frames.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ResumePoint {
+    /**
+     * History of a sequence mark, and of a client that hasn't joined a room yet.
+     */
+    public static final long NO_HISTORY = 0;
+    /**
+     * Session of a sequence mark, and of a client that hasn't joined a room yet.
+     */
+    public static final long NO_SESSION = 0;
+    private final long history;
+    private final long sequence;
+    private final int clientId;
+    private final long session;
+
+    /**
+     * Constructor which sets the history, the sequence number, the client id and the session.
+     * @param history is the history of the room, or {@link #NO_HISTORY} for a sequence mark.
+     * @param sequence is the sequence number of the last message before this point.
+     * @param clientId is the client id handed out to the joined client, or {@link Shape#NO_CLIENT} for a mark.
+     * @param session is the session handed out to the joined client, or {@link #NO_SESSION} for a mark.
+     */
+    public ResumePoint(long history, long sequence, int clientId, long session) {
+        this.history = history;
+        this.sequence = sequence;
+        this.clientId = clientId;
+        this.session = session;
+    }
+
+    /**
+     * Creates a sequence mark, which stays within the history of the room.
+     * @param sequence is the sequence number of the last message before the mark.
+     * @return the mark.
+     */
+    public static ResumePoint mark(long sequence) {
+        return new ResumePoint(NO_HISTORY, sequence, Shape.NO_CLIENT, NO_SESSION);
+    }
+
+    /**
+     * Checks if this is a sequence mark.
+     * @return true if it has no history.
+     */
+    public boolean isMark() {
+        return history == NO_HISTORY;
+    }
+
+    /**
+     * Getter for the history of the room.
+     * @return the history, or {@link #NO_HISTORY} for a sequence mark.
+     */
+    public long getHistory() {
+        return history;
+    }
+
+    /**
+     * Getter for the sequence number of the last message before this point.
+     * @return the sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Getter for the client id handed out to the joined client, see {@link Shape#idOf(int, int)}.
+     * @return the client id, or {@link Shape#NO_CLIENT} for a sequence mark.
+     */
+    public int getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Getter for the session handed out to the joined client, which it sends back when it resumes.
+     * @return the session, or {@link #NO_SESSION} for a sequence mark.
+     */
+    public long getSession() {
+        return session;
+    }
+}
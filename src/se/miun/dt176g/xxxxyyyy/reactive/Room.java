@@ -0,0 +1,454 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <h1>Room</h1>
+ * One canvas hosted by a Server: its Drawing, the peers sharing it and the journal it is persisted to.
+ * Messages are only fanned out to the peers of the room they were sent in, so rooms don't add to each
+ * other's broadcast cost. Messages that change the drawing are numbered and kept in a ReplayBuffer, so a client
+ * that reconnects is only sent what it missed. Rooms are changed on the event loop of the server.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class Room {
+    private static final SecureRandom SESSIONS = new SecureRandom(); // Sessions must not be guessed by other clients.
+    private final String name;
+    private final Drawing drawing;
+    private final FrameEncoder frameEncoder;
+    private final Scheduler loop;
+    private final Set<Peer> peers = ConcurrentHashMap.newKeySet();
+    private final Map<Peer, Integer> clientIds = new ConcurrentHashMap<>(); // The client id handed out to each peer.
+    // Identifies this instance of the room, its sequence numbers start over when it is restored or recreated.
+    private final long history = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final ReplayBuffer replayBuffer = new ReplayBuffer(
+            Math.max(1, Integer.getInteger(Constants.REPLAY_BUFFER_FRAMES_PROPERTY, Constants.REPLAY_BUFFER_FRAMES)),
+            Long.getLong(Constants.REPLAY_BUFFER_BYTES_PROPERTY, Constants.REPLAY_BUFFER_BYTES));
+    // The client id handed out with each session, oldest first, so a resuming client is known by its session.
+    private final Map<Long, Integer> sessions = new LinkedHashMap<>();
+    // Peers waiting for their snapshot, with the broadcasts held back until it is sent.
+    private final Map<Peer, List<Runnable>> joiningPeers = new ConcurrentHashMap<>();
+    // The ids of the strokes and previews each peer has begun but not finished, ended for it if it leaves.
+    private final Map<Peer, Set<Long>> openShapes = new HashMap<>();
+    private final Scheduler io; // Where the journal is read and closed, off the event loop.
+    private DrawingJournal journal; // Persists the changes to the drawing, null if disabled.
+    private List<Runnable> heldWork; // Work held back while the drawing is restored, null once restored.
+    private boolean closed = false;
+    // The client id handed out next, above the client ids of the shapes in the drawing so the ids stay unique.
+    private int nextClientId;
+    private long idleSince = System.currentTimeMillis();
+
+    /**
+     * Constructor which sets the name and the drawing of the room.
+     * @param name is the name of the room.
+     * @param drawing is the drawing of the room.
+     * @param frameEncoder is the encoder used for the snapshots sent to joining peers.
+     * @param loop is the event loop the room is changed on.
+     * @param io is the scheduler the journal is read and closed on, so the disk never blocks the event loop.
+     */
+    public Room(String name, Drawing drawing, FrameEncoder frameEncoder, Scheduler loop, Scheduler io) {
+        this.name = name;
+        this.drawing = drawing;
+        this.frameEncoder = frameEncoder;
+        this.loop = loop;
+        this.io = io;
+        nextClientId = highestClientId(drawing) + 1;
+    }
+
+    /**
+     * Getter for the name of the room.
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for the drawing of the room.
+     * @return the drawing.
+     */
+    public Drawing getDrawing() {
+        return drawing;
+    }
+
+    /**
+     * Getter for the peers that have joined the room, not including the ones still waiting for their snapshot.
+     * @return the peers.
+     */
+    public Set<Peer> getPeers() {
+        return peers;
+    }
+
+    /**
+     * Rebuilds the drawing from a journal and starts appending to it. The journal is read into a drawing of its
+     * own on the io scheduler, since the drawing of the room may be shown and painted meanwhile, and that drawing
+     * is swapped in on the event loop. Work for the room is held back until then, see
+     * {@link #whenRestored(Runnable)}.
+     * @param path is the path of the journal file.
+     */
+    public void restore(Path path) {
+        heldWork = new ArrayList<>();
+        io.scheduleDirect(() -> {
+            Drawing read = new Drawing();
+            DrawingJournal opened = new DrawingJournal(path);
+            try {
+                for (Object message : opened.open()) {
+                    if (Constants.CLEAR.equals(message)) {
+                        read.clear();
+                    } else if (message instanceof Shape) {
+                        read.finishShape((Shape) message);
+                    } else if (message instanceof StrokeSegment) {
+                        read.applyStrokeSegment((StrokeSegment) message);
+                    } else if (message instanceof ShapeUpdate) {
+                        read.applyShapeUpdate((ShapeUpdate) message);
+                    }
+                }
+                // Strokes and previews being drawn when the room was closed will never be finished.
+                read.endOpenShapes();
+            } catch (IOException e) {
+                e.printStackTrace();
+                opened = null;
+            }
+            DrawingJournal restored = opened;
+            int highest = highestClientId(read);
+            loop.scheduleDirect(() -> finishRestore(read, restored, highest));
+        });
+    }
+
+    /**
+     * Swaps in the restored drawing, starts appending to the restored journal and runs the work held back
+     * meanwhile. Used on the event loop.
+     * @param read is the drawing read from the journal.
+     * @param restored is the opened journal, or null if it couldn't be read.
+     * @param highest is the highest client id among the restored shapes.
+     */
+    private void finishRestore(Drawing read, DrawingJournal restored, int highest) {
+        drawing.replaceWith(read);
+        nextClientId = Math.max(nextClientId, highest + 1);
+        if (closed) {
+            if (restored != null) {
+                io.scheduleDirect(restored::close); // The server shut down while the journal was read.
+            }
+        } else {
+            journal = restored;
+        }
+        List<Runnable> held = heldWork;
+        heldWork = null;
+        held.forEach(Runnable::run);
+    }
+
+    /**
+     * Runs work for the room once its drawing is restored, right away if it already is. Used on the event loop,
+     * so the work runs in the order it was given.
+     * @param work is the work.
+     */
+    public void whenRestored(Runnable work) {
+        if (heldWork != null) {
+            heldWork.add(work);
+        } else {
+            work.run();
+        }
+    }
+
+    /**
+     * Finds the highest client id among the shapes in a drawing.
+     * @param drawing is the drawing.
+     * @return the client id, or {@link Shape#NO_CLIENT} if the drawing is empty.
+     */
+    private static int highestClientId(Drawing drawing) {
+        int highest = Shape.NO_CLIENT;
+        for (Shape shape : drawing.getShapes()) {
+            if (shape != null) {
+                highest = Math.max(highest, Shape.clientIdOf(shape.getId()));
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Hands out a client id no other client of this room has created shapes with. Used on the event loop.
+     * @return the client id, or {@link Shape#NO_CLIENT} if the room has handed out all of them.
+     */
+    public int newClientId() {
+        return nextClientId <= Shape.MAX_CLIENT_ID ? nextClientId++ : Shape.NO_CLIENT;
+    }
+
+    /**
+     * Registers a peer for broadcasts, after sending it what it is missing and then its resume point, which hands
+     * out a new client id and session to the peer. A peer resuming within the replay buffer with a session of this
+     * room is only sent the broadcasts after its resume point, except the ones that came from the client id of the
+     * session. Any other peer is sent a snapshot of the drawing, which is copied here and compressed in the
+     * background, broadcasts made meanwhile are held back and sent after the snapshot.
+     * @param peer is the joining peer.
+     * @param request is the JoinRoom the peer sent.
+     */
+    public void join(Peer peer, JoinRoom request) {
+        int clientId = newClientId();
+        if (clientId == Shape.NO_CLIENT) {
+            peer.close(false); // Any id handed out again could clash with the shapes of another client.
+            return;
+        }
+        clientIds.put(peer, clientId);
+        long session = newSession(clientId);
+        Integer resumedClientId = request.getHistory() == history ? sessions.remove(request.getSession()) : null;
+        if (resumedClientId != null && replayBuffer.canResume(request.getSequence())) {
+            replayBuffer.replay(request.getSequence(), resumedClientId, peer);
+            peer.send(OutboundQueue.NO_KEY, frameEncoder.encode(
+                    new ResumePoint(history, replayBuffer.getLastSequence(), clientId, session)));
+            peers.add(peer);
+            return;
+        }
+        List<Object> snapshot = drawing.snapshot();
+        ResumePoint resumePoint = new ResumePoint(history, replayBuffer.getLastSequence(), clientId, session);
+        joiningPeers.put(peer, new ArrayList<>());
+        Schedulers.computation().scheduleDirect(() -> {
+            List<SnapshotChunk> chunks = SnapshotCodec.encode(snapshot);
+            loop.scheduleDirect(() -> {
+                List<Runnable> heldBroadcasts = joiningPeers.remove(peer);
+                if (heldBroadcasts == null) {
+                    return; // Left while the snapshot was encoded.
+                }
+                for (SnapshotChunk chunk : chunks) {
+                    peer.send(OutboundQueue.NO_KEY, frameEncoder.encode(chunk));
+                }
+                peer.send(OutboundQueue.NO_KEY, frameEncoder.encode(resumePoint));
+                heldBroadcasts.forEach(Runnable::run);
+                peers.add(peer);
+            });
+        });
+    }
+
+    /**
+     * Hands out a session for a client id, forgetting the oldest session once there are too many.
+     * @param clientId is the client id.
+     * @return the session, a positive number.
+     */
+    private long newSession(int clientId) {
+        long session;
+        do {
+            session = SESSIONS.nextLong() >>> 1;
+        } while (session == ResumePoint.NO_SESSION || sessions.containsKey(session));
+        sessions.put(session, clientId);
+        if (sessions.size() > Constants.RESUMABLE_SESSIONS) {
+            Iterator<Long> oldest = sessions.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        return session;
+    }
+
+    /**
+     * Removes a peer from the room. The strokes and previews the peer was still drawing are ended, and the ends are
+     * broadcast, since the peer will never send them. Otherwise they would stay live and keep every later shape
+     * out of the cached layer of the DrawingPanels.
+     * @param peer is the peer.
+     * @return the area of the drawing changed by ending the shapes, or null if nothing changed.
+     */
+    public Rectangle leave(Peer peer) {
+        boolean removed = peers.remove(peer) | joiningPeers.remove(peer) != null;
+        if (removed && peers.isEmpty() && joiningPeers.isEmpty()) {
+            idleSince = System.currentTimeMillis();
+        }
+        Rectangle changed = null;
+        Set<Long> open = openShapes.remove(peer);
+        if (open != null) {
+            for (long id : open) {
+                Rectangle ended = endOpenShape(id);
+                if (ended != null) {
+                    changed = changed == null ? ended : changed.union(ended);
+                }
+            }
+        }
+        clientIds.remove(peer);
+        return changed;
+    }
+
+    /**
+     * Ends a stroke or preview that is still being drawn and broadcasts the end. A stroke is ended with an END
+     * segment and a preview by sending it as a finished Shape.
+     * @param id is the id of the stroke or preview.
+     * @return the area of the shape, or null if it wasn't open.
+     */
+    private Rectangle endOpenShape(long id) {
+        Shape shape = drawing.getShape(id);
+        if (shape == null) {
+            return null;
+        }
+        Object end;
+        if (drawing.isOpenStroke(shape)) {
+            drawing.endStroke(id);
+            end = StrokeSegment.end(id);
+        } else if (drawing.isOpenPreview(shape)) {
+            drawing.finishShape(shape);
+            end = shape;
+        } else {
+            return null;
+        }
+        broadcast(end, frameEncoder.encode(end), null);
+        return shape.getBounds();
+    }
+
+    /**
+     * Checks if the room has had no peers for a while.
+     * @param now is the current time in milliseconds.
+     * @param timeoutMs is how long the room must have been empty, in milliseconds.
+     * @return true if the room is idle.
+     */
+    public boolean isIdle(long now, long timeoutMs) {
+        return heldWork == null && peers.isEmpty() && joiningPeers.isEmpty() && now - idleSince >= timeoutMs;
+    }
+
+    /**
+     * Checks if the room is persisted to a journal.
+     * @return true if it has a journal.
+     */
+    public boolean isPersisted() {
+        return journal != null;
+    }
+
+    /**
+     * Queues an encoded message for every peer of the room except the one it came from. A message that changes
+     * the drawing is also numbered and added to the replay buffer, and to the journal unless it is a ShapeUpdate.
+     * @param message is the message.
+     * @param frame is the encoded message.
+     * @param origin is the peer the message came from, or null if it was created locally.
+     */
+    public void broadcast(Object message, byte[] frame, Peer origin) {
+        if (origin != null) {
+            trackOpenShape(message, origin);
+        }
+        boolean persisted = message instanceof Shape || message instanceof StrokeSegment
+                || Constants.CLEAR.equals(message);
+        DrawingJournal appended = journal;
+        if (appended != null && persisted) {
+            appended.append(frame);
+        }
+        long key = OutboundQueue.keyOf(message);
+        long sequence = persisted || message instanceof ShapeUpdate
+                ? replayBuffer.append(key, clientIdOf(origin), frame) : OutboundQueue.NO_SEQUENCE;
+        for (Peer peer : peers) {
+            if (peer != origin) {
+                peer.send(key, sequence, frame);
+            }
+        }
+        for (Map.Entry<Peer, List<Runnable>> joining : joiningPeers.entrySet()) {
+            Peer peer = joining.getKey();
+            if (peer != origin) {
+                joining.getValue().add(() -> peer.send(key, sequence, frame));
+            }
+        }
+    }
+
+    /**
+     * Keeps track of the strokes and previews a peer has begun and not yet finished.
+     * @param message is a message from the peer that changed the drawing.
+     * @param origin is the peer.
+     */
+    private void trackOpenShape(Object message, Peer origin) {
+        if (message instanceof StrokeSegment) {
+            StrokeSegment segment = (StrokeSegment) message;
+            if (segment.getKind() == StrokeSegment.Kind.BEGIN) {
+                openShapes.computeIfAbsent(origin, peer -> new HashSet<>()).add(segment.getShapeId());
+            } else if (segment.getKind() == StrokeSegment.Kind.END) {
+                stopTracking(origin, segment.getShapeId());
+            }
+        } else if (message instanceof ShapeUpdate) {
+            ShapeUpdate update = (ShapeUpdate) message;
+            if (update.getKind() == ShapeUpdate.Kind.BEGIN) {
+                openShapes.computeIfAbsent(origin, peer -> new HashSet<>()).add(update.getShapeId());
+            }
+        } else if (message instanceof Shape) {
+            stopTracking(origin, ((Shape) message).getId());
+        }
+    }
+
+    /**
+     * Stops keeping track of a stroke or preview a peer has finished.
+     * @param peer is the peer.
+     * @param id is the id of the stroke or preview.
+     */
+    private void stopTracking(Peer peer, long id) {
+        Set<Long> open = openShapes.get(peer);
+        if (open != null && open.remove(id) && open.isEmpty()) {
+            openShapes.remove(peer);
+        }
+    }
+
+    /**
+     * Finds the client id handed out to a peer.
+     * @param peer is the peer, or null for messages created locally.
+     * @return the client id, or {@link Shape#NO_CLIENT}.
+     */
+    private int clientIdOf(Peer peer) {
+        Integer clientId = peer != null ? clientIds.get(peer) : null;
+        return clientId != null ? clientId : Shape.NO_CLIENT;
+    }
+
+    /**
+     * Compacts the journal to an image of the drawing if it has grown enough. The image is only a copy of
+     * the list of Shapes, they are encoded by the journal's writer thread.
+     */
+    public void compactJournal() {
+        if (journal != null && journal.needsCompaction()) {
+            journal.compact(drawing.snapshot());
+        }
+    }
+
+    /**
+     * Writes the drawing to the journal as a compacted image and closes it, so the room can be dropped
+     * from memory and restored from the journal when it is joined again. The journal is closed on the io
+     * scheduler, which also reads it again if the room is restored, so that waits for the close.
+     */
+    public void evict() {
+        if (journal != null) {
+            journal.compact(drawing.snapshot());
+            DrawingJournal evicted = journal;
+            journal = null;
+            io.scheduleDirect(evicted::close);
+        }
+    }
+
+    /**
+     * Closes the peers of the room, letting the writers send what is queued, and the peers still waiting for their
+     * snapshot. Used on the event loop when the server shuts down.
+     */
+    public void closePeers() {
+        for (Peer peer : peers) {
+            peer.close(true);
+        }
+        for (Peer peer : joiningPeers.keySet()) {
+            peer.close(false);
+        }
+        joiningPeers.clear();
+    }
+
+    /**
+     * Writes what is queued for the journal and closes it, waiting for the writes. Used on the event loop when the
+     * server shuts down.
+     */
+    public void closeJournal() {
+        closed = true;
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
@@ -3,74 +3,151 @@ package se.miun.dt176g.xxxxyyyy.reactive;
 import io.reactivex.rxjava3.annotations.NonNull;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.processors.PublishProcessor;
 import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
 
 import javax.swing.*;
+import java.awt.Rectangle;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <h1>Server</h1>
  * Represents the server-side of the application for handling incoming and outgoing connections/drawing events.
- * The server also have it's own GUI.
+ * The server hosts any number of rooms, each with its own Drawing and peers, and a client picks its room with
+ * its first message. The server also have it's own GUI, showing the default room, unless it runs headless as a
+ * relay only. The rooms are changed on one event loop thread, the EDT, or a relay thread of its own when headless.
+ * This engine uses blocking sockets with a reader and a writer thread per client, see {@link NioServer} for the
+ * selector based engine.
  * @author 	Emma Pesjak
  * @version 1.0
  * @since 	2023-10-06
  */
 public class Server implements ConnectionHandler, Serializable {
     private static final long serialVersionUID = 1L;
+    private static final long ROOM_IO_SHUTDOWN_S = 10;
+    private static final long LOOP_SHUTDOWN_S = 10;
     private MainFrame mainFrame;
-    public DrawingPanel drawingPanel;
-    public static Menu menu = new Menu();
+    public DrawingPanel drawingPanel; // Null when headless.
+    public static Menu menu; // Created with the first GUI.
     private final Drawing drawing = new Drawing();
+    private final FrameEncoder frameEncoder = new FrameEncoder();
+    private final ShapeIdSource shapeIds = new ShapeIdSource(); // For the shapes drawn in the GUI.
+    private final Scheduler loop; // The event loop the rooms are changed on.
+    private final ExecutorService relayExecutor; // Runs the event loop when headless, null otherwise.
+    // Reads and closes the journals of the rooms, one at a time so a room is only read once it is closed.
+    private final ExecutorService roomIoExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "room-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Scheduler roomIo = Schedulers.from(roomIoExecutor);
+    private final Room defaultRoom; // Shown in the GUI.
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>(); // Rooms in memory, changed on the loop.
+    private final Map<Peer, String> peerRooms = new ConcurrentHashMap<>(); // The room of each peer.
     private boolean acceptConnections = true;
     private ServerSocket serverSocket;
     private final List<Socket> clientSockets = new ArrayList<>();
-    private final Map<Socket, ObjectOutputStream> clientOutputStreams = new ConcurrentHashMap<>();
     private final List<Thread> clientThreads = new ArrayList<>();
-    private final PublishSubject<Object> outgoingDataObserver = PublishSubject.create();
+    private final PublishProcessor<Object> outgoingDataObserver = PublishProcessor.create();
     private final Map<Socket, Observable<Object>> clientObservables = new ConcurrentHashMap<>();
+    private final LoopDispatcher dispatcher; // Applies received messages on the event loop.
+    private Path roomDirectory; // Where the journals of the rooms are kept, null if they aren't persisted.
+    private Disposable roomMaintenance;
+    private final OverflowPolicy overflowPolicy;
+    private final int queueCapacity;
 
     /**
-     * Constructor which sets the DrawingPanel and ServerSocket.
+     * Constructor which uses the overflow policy and headless mode from the system properties,
+     * or drops the oldest frames with a GUI by default.
      */
     public Server() {
-        try {
-            drawingPanel = new DrawingPanel(drawing, menu, this);
-            serverSocket = new ServerSocket(Constants.PORT);
+        this(OverflowPolicy.valueOf(System.getProperty(Constants.OVERFLOW_POLICY_PROPERTY,
+                OverflowPolicy.DROP_OLDEST.name())), Constants.OUTBOUND_QUEUE_CAPACITY,
+                Boolean.getBoolean(Constants.HEADLESS_PROPERTY));
+    }
 
-            // Subscribe outgoingDataObserver to send data to clients
-            outgoingDataObserver.subscribe(o -> {
-                for (ObjectOutputStream outputStream : clientOutputStreams.values()) {
-                    try {
-                        outputStream.writeObject(o);
-                        outputStream.flush();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        } catch (IOException e) {
-            handleServerSocketError(e);
+    /**
+     * Constructor which sets the DrawingPanel.
+     * @param overflowPolicy is what to do when the outbound queue of a client is full.
+     * @param queueCapacity is the capacity of the outbound queue of each client.
+     */
+    public Server(OverflowPolicy overflowPolicy, int queueCapacity) {
+        this(overflowPolicy, queueCapacity, false);
+    }
+
+    /**
+     * Constructor which sets the DrawingPanel, or the relay thread if headless.
+     * A headless server loads no Swing classes, and applies received messages as soon as the relay thread
+     * gets to them instead of once per frame, since there is nothing to repaint.
+     * @param overflowPolicy is what to do when the outbound queue of a client is full.
+     * @param queueCapacity is the capacity of the outbound queue of each client.
+     * @param headless is true if the server should run without a GUI.
+     */
+    public Server(OverflowPolicy overflowPolicy, int queueCapacity, boolean headless) {
+        this.overflowPolicy = overflowPolicy;
+        this.queueCapacity = queueCapacity;
+        if (headless) {
+            // Work staged after shutdown, such as peers leaving as their sockets close, is discarded.
+            relayExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    task -> new Thread(task, "relay-loop"), new ThreadPoolExecutor.DiscardPolicy());
+            loop = Schedulers.from(relayExecutor);
+            dispatcher = new LoopDispatcher(loop, 0);
+        } else {
+            if (menu == null) {
+                menu = new Menu();
+            }
+            drawingPanel = new DrawingPanel(drawing, menu, this);
+            relayExecutor = null;
+            loop = SwingScheduler.EDT;
+            dispatcher = new LoopDispatcher();
         }
+        defaultRoom = new Room(Constants.DEFAULT_ROOM, drawing, frameEncoder, loop, roomIo);
+        rooms.put(defaultRoom.getName(), defaultRoom);
+
+        // Subscribe outgoingDataObserver to queue data for the clients, each client has its own writer.
+        // The GUI draws on the EDT, which is the event loop whenever there is a GUI, so the broadcast runs
+        // synchronously there and the outbound queues of the clients are what absorb bursts.
+        outgoingDataObserver
+                .subscribe(o -> defaultRoom.whenRestored(() -> broadcast(defaultRoom, o, null)),
+                        Throwable::printStackTrace);
     }
 
     /**
      * Main starting point of the server side of the application.
+     * The selector based engine is used if the server engine system property is set to "nio", and the
+     * server runs as a relay without a GUI if the headless system property is set to "true".
      * @param args not applicable here.
      */
     public static void main(String[] args) {
+        if (Boolean.getBoolean(Constants.HEADLESS_PROPERTY)) {
+            System.setProperty("java.awt.headless", "true");
+            Server server = createServer();
+            server.startServer();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::shutDown, "server-shutdown"));
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
-            Server server = new Server(); // Create an instance of Server.
+            Server server = createServer();
             MainFrame frame = new MainFrame(server, menu); // Pass the server instance to MainFrame.
             frame.setVisible(true);
             server.setMainFrame(frame);
@@ -78,6 +155,22 @@ public class Server implements ConnectionHandler, Serializable {
         });
     }
 
+    /**
+     * Creates an instance of the chosen Server engine.
+     * @return the server.
+     */
+    private static Server createServer() {
+        return "nio".equals(System.getProperty(Constants.SERVER_ENGINE_PROPERTY)) ? new NioServer() : new Server();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ShapeIdSource getShapeIds() {
+        return shapeIds;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -90,6 +183,13 @@ public class Server implements ConnectionHandler, Serializable {
      * Starts the server by accepting incoming connections in a separate thread.
      */
     public void startServer() {
+        try {
+            serverSocket = new ServerSocket(listenPort());
+        } catch (IOException e) {
+            handleServerSocketError(e);
+            return;
+        }
+        restoreDrawing();
         Observable.create(emitter -> {
             while (acceptConnections) {
                 try {
@@ -120,38 +220,146 @@ public class Server implements ConnectionHandler, Serializable {
         );
     }
 
+    /**
+     * Finds the port to listen on, given by the port system property. Used by all server engines.
+     * @return the port, 0 for any free port.
+     */
+    protected static int listenPort() {
+        return Integer.getInteger(Constants.PORT_PROPERTY, Constants.PORT);
+    }
+
+    /**
+     * Getter for the port the server listens on, which is useful when it was started on any free port.
+     * @return the port, or -1 if the server isn't listening.
+     */
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    /**
+     * Starts rebuilding the default room from the journal and appending to it. The journal file is given by the
+     * journal system property, an empty value disables it. The journals of the other rooms are kept in the
+     * room directory. Used by all server engines before accepting clients, the clients joining before the
+     * journal is read wait for it. The GUI gets its client id once the default room is restored.
+     */
+    protected void restoreDrawing() {
+        String file = System.getProperty(Constants.JOURNAL_PROPERTY, Constants.JOURNAL_FILE);
+        if (!file.isEmpty()) {
+            defaultRoom.restore(Paths.get(file));
+        }
+        if (drawingPanel != null) {
+            // The GUI draws in the default room, with a client id handed out by it like for any client.
+            loop.scheduleDirect(() -> defaultRoom.whenRestored(() -> {
+                shapeIds.setClientId(defaultRoom.newClientId());
+                drawingPanel.invalidateCommittedLayer(); // The restored drawing was swapped in.
+                drawingPanel.repaint();
+            }));
+        }
+        if (file.isEmpty()) {
+            return;
+        }
+        try {
+            roomDirectory = Files.createDirectories(
+                    Paths.get(System.getProperty(Constants.ROOM_DIRECTORY_PROPERTY, Constants.ROOM_DIRECTORY)));
+        } catch (IOException e) {
+            e.printStackTrace(); // The other rooms are kept in memory only.
+        }
+        roomMaintenance = loop.schedulePeriodicallyDirect(this::maintainRooms,
+                0, Constants.JOURNAL_COMPACT_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Evicts the persisted rooms that have been idle for long enough from memory, and compacts the journals of
+     * the others if they have grown enough. Runs on the event loop, where the drawings are changed and frames are
+     * appended to the journals, so the images match the frames appended so far. The images are written and the
+     * journals closed off the event loop.
+     */
+    private void maintainRooms() {
+        long now = System.currentTimeMillis();
+        long idleTimeoutMs = TimeUnit.SECONDS.toMillis(Constants.ROOM_IDLE_TIMEOUT_S);
+        for (Room room : rooms.values()) {
+            if (room != defaultRoom && room.isPersisted() && room.isIdle(now, idleTimeoutMs)) {
+                room.evict();
+                rooms.remove(room.getName());
+            } else {
+                room.compactJournal();
+            }
+        }
+    }
+
+    /**
+     * Finds a room, restoring it from its journal or creating it if it isn't in memory. A room being restored
+     * holds back the work given to it, see {@link Room#whenRestored(Runnable)}. Used on the event loop.
+     * @param name is the name of the room.
+     * @return the room.
+     */
+    private Room openRoom(String name) {
+        Room room = rooms.get(name);
+        if (room == null) {
+            room = new Room(name, new Drawing(), frameEncoder, loop, roomIo);
+            if (roomDirectory != null) {
+                room.restore(roomDirectory.resolve(name + Constants.ROOM_JOURNAL_SUFFIX));
+            }
+            rooms.put(name, room);
+        }
+        return room;
+    }
+
+    /**
+     * Lets a peer join a room, sending it what it is missing of the room's drawing. Used on the event loop.
+     * @param peer is the peer.
+     * @param request is the JoinRoom the peer sent.
+     */
+    private void joinRoom(Peer peer, JoinRoom request) {
+        if (!request.getRoom().equals(peerRooms.get(peer))) {
+            return; // Disconnected before joining.
+        }
+        Room room = openRoom(request.getRoom());
+        room.whenRestored(() -> room.join(peer, request));
+    }
+
     /**
      * Handles an incoming connection from a client.
      * This method sets up communication with the new client, including creating
      * input and output streams, and establishing an observable for incoming
-     * drawing events. It also sends existing drawing shapes to the new client.
+     * drawing events.
      * @param socket is the socket representing the client connection.
      */
     private synchronized void handleIncomingConnection(Socket socket) {
+        PeerConnection connection = null;
         try {
             clientSockets.add(socket);
-            ObjectOutputStream clientOutputStream = new ObjectOutputStream(socket.getOutputStream());
-            clientOutputStreams.put(socket, clientOutputStream);
-            clientOutputStream.flush();
+            FrameOutputStream clientOutputStream = new FrameOutputStream(socket.getOutputStream());
+            connection = new PeerConnection(socket, clientOutputStream, queueCapacity,
+                    overflowPolicy, this::disconnectPeer);
+            connection.start();
 
-            ObjectInputStream clientInputStream = new ObjectInputStream(socket.getInputStream());
+            FrameInputStream clientInputStream = new FrameInputStream(socket.getInputStream());
+            PeerConnection peer = connection;
+            FrameDecoder frameDecoder = new FrameDecoder();
 
             // Create an observable for incoming drawing events.
             Observable<Object> clientDrawingEvents = Observable.create(emitter -> {
                 while (!emitter.isDisposed()) {
                     try {
-                        Object receivedObject = clientInputStream.readObject();
+                        byte[] frame = clientInputStream.readFrame();
+                        long decodeStart = System.nanoTime();
+                        Object receivedObject = frameDecoder.decode(frame);
+                        Metrics.get().record(Metrics.Timing.DECODE, decodeStart);
+                        peer.getMetrics().receivedFrame(frame.length);
 
                         // Emit the received object to subscribers.
                         emitter.onNext(receivedObject);
-                    } catch (SocketException | EOFException e) {
-                        handleClientDisconnect(socket);
+                    } catch (IOException e) {
+                        if (!(e instanceof SocketException || e instanceof EOFException)) {
+                            // A malformed frame, the stream can't be trusted to be in sync any more.
+                            e.printStackTrace();
+                        }
+                        disconnectPeer(peer);
                         clientInputStream.close();
                         emitter.onComplete();
                         // Break out of the loop to terminate this client thread.
                         break;
-                    } catch (IOException | ClassNotFoundException e) {
-                        e.printStackTrace();
                     }
                 }
             }).subscribeOn(Schedulers.io()); // Offload to the io scheduler.
@@ -163,24 +371,12 @@ public class Server implements ConnectionHandler, Serializable {
             Observer<Object> clientObserver = new Observer<>() {
                 @Override
                 public void onSubscribe(@NonNull Disposable d) {
-                    // Iterate through the already drawn Shapes in the drawing and send them to the new client.
-                    for (Shape sentShape : drawing.getShapes()) {
-                        outgoingDataObserver.onNext(sentShape);
-                    }
+
                 }
 
                 @Override
                 public void onNext(@NonNull Object object) {
-                    handleReceivedObject(object);
-                    if (object instanceof String && object.equals(Constants.CLIENT_SHUT_DOWN)) {
-
-                        handleClientDisconnect(socket);
-                        try {
-                            clientInputStream.close();
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
+                    handlePeerMessage(peer, object);
                 }
 
                 @Override
@@ -198,10 +394,92 @@ public class Server implements ConnectionHandler, Serializable {
                     .observeOn(Schedulers.io())
                     .subscribe(clientObserver);
         } catch (IOException e) {
+            // Also thrown for an invalid stream header, release the writer and the socket.
             e.printStackTrace();
+            if (connection != null) {
+                connection.close(false);
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException closeException) {
+                    closeException.printStackTrace();
+                }
+            }
+            clientSockets.remove(socket);
+        }
+    }
+
+    /**
+     * Handles a message received from a peer. The first message of a peer picks its room, a JoinRoom names
+     * the room and where to resume from, and any other message joins the default room. A peer asking for an
+     * invalid room name is disconnected. Messages still arriving from a disconnected peer are dropped, they were
+     * read before the peer was closed. Used by all server engines.
+     * @param peer is the peer that sent the message.
+     * @param object is the received message.
+     */
+    protected void handlePeerMessage(Peer peer, Object object) {
+        List<Object> messages = object instanceof MessageBatch
+                ? ((MessageBatch) object).getMessages() : Collections.singletonList(object);
+        // Held against disconnectPeer, so nothing from the peer is staged after its leave.
+        synchronized (peer) {
+            if (peer.isClosed()) {
+                return;
+            }
+            peer.getMetrics().receivedMessages(messages.size());
+            String roomName = peerRooms.get(peer);
+            if (roomName == null) {
+                Object first = messages.isEmpty() ? null : messages.get(0);
+                JoinRoom request = first instanceof JoinRoom
+                        ? (JoinRoom) first : new JoinRoom(Constants.DEFAULT_ROOM);
+                roomName = request.getRoom();
+                if (!roomName.matches(Constants.ROOM_NAME_PATTERN)) {
+                    disconnectPeer(peer);
+                    return;
+                }
+                peerRooms.put(peer, roomName);
+                // Staged like the messages, so the peer joins before its messages are applied.
+                dispatcher.dispatch(() -> joinRoom(peer, request));
+            }
+            handleReceivedObject(object, peer, roomName);
+            if (messages.contains(Constants.CLIENT_SHUT_DOWN)) {
+                disconnectPeer(peer);
+            }
         }
     }
 
+    /**
+     * Getter for the overflow policy of the outbound queues.
+     * @return the overflow policy.
+     */
+    protected OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Getter for the capacity of the outbound queues.
+     * @return the capacity.
+     */
+    protected int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Encodes a message once and queues it for every peer in a room except the one it came from,
+     * and for the room's journal if it changes the drawing.
+     * @param room is the room.
+     * @param message is the message.
+     * @param origin is the peer the message came from, or null if it was created locally.
+     */
+    private void broadcast(Room room, Object message, Peer origin) {
+        Metrics metrics = Metrics.get();
+        long start = System.nanoTime();
+        byte[] frame = frameEncoder.encode(message);
+        metrics.record(Metrics.Timing.ENCODE, start);
+        start = System.nanoTime();
+        room.broadcast(message, frame, origin);
+        metrics.record(Metrics.Timing.FAN_OUT, start);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -210,6 +488,22 @@ public class Server implements ConnectionHandler, Serializable {
         outgoingDataObserver.onNext(shape);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendStrokeSegment(StrokeSegment segment) {
+        outgoingDataObserver.onNext(segment);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendShapeUpdate(ShapeUpdate update) {
+        outgoingDataObserver.onNext(update);
+    }
+
     /**
      * Getter for the server's DrawingPanel.
      * @return the DrawingPanel.
@@ -223,34 +517,105 @@ public class Server implements ConnectionHandler, Serializable {
      */
     @Override
     public void handleReceivedObject(Object receivedObject) {
-        SwingUtilities.invokeLater(() -> {
-            if (receivedObject instanceof String && receivedObject.equals(Constants.CLEAR)) {
-                clearEvent();
-            } else if (receivedObject instanceof Shape) {
-                drawing.addShape((Shape) receivedObject);
-                drawingPanel.repaint();
-                sendShape((Shape) receivedObject);
-            }
+        handleReceivedObject(receivedObject, null, Constants.DEFAULT_ROOM);
+    }
+
+    /**
+     * Stages a received object, or all the messages of a received batch, to be applied to the drawing
+     * on the event loop together with the other objects received within the same frame.
+     * @param receivedObject is the received object.
+     * @param origin is the peer the object came from, or null.
+     * @param roomName is the name of the room the object was sent in.
+     */
+    private void handleReceivedObject(Object receivedObject, Peer origin, String roomName) {
+        dispatcher.dispatch(() -> {
+            Room room = openRoom(roomName);
+            room.whenRestored(() -> {
+                if (receivedObject instanceof MessageBatch) {
+                    for (Object message : ((MessageBatch) receivedObject).getMessages()) {
+                        applyReceivedObject(message, origin, room);
+                    }
+                } else {
+                    applyReceivedObject(receivedObject, origin, room);
+                }
+            });
         });
     }
 
     /**
-     * Handles the disconnection of a client from the server, cleans up resources.
-     * @param socket is the socket representing the disconnected client.
+     * Applies a received message to the drawing of a room and relays it to the other clients in the room.
+     * Only the default room is shown, so the other rooms are changed without repainting. Used on the event loop.
+     * @param receivedObject is the received message.
+     * @param origin is the peer the message came from, or null.
+     * @param room is the room the message was sent in.
      */
-    private void handleClientDisconnect(Socket socket) {
-        clientSockets.remove(socket);
-        clientOutputStreams.remove(socket);
+    private void applyReceivedObject(Object receivedObject, Peer origin, Room room) {
+        boolean shown = room == defaultRoom && drawingPanel != null;
+        if (receivedObject instanceof String && receivedObject.equals(Constants.CLEAR)) {
+            if (shown) {
+                drawingPanel.clearDrawing();
+            } else {
+                room.getDrawing().clear();
+            }
+            broadcast(room, Constants.CLEAR, origin);
+        } else if (receivedObject instanceof Shape) {
+            Rectangle changed = room.getDrawing().finishShape((Shape) receivedObject);
+            if (changed != null) {
+                if (shown) {
+                    drawingPanel.repaint(changed);
+                }
+                broadcast(room, receivedObject, origin);
+            }
+        } else if (receivedObject instanceof ShapeUpdate) {
+            Rectangle changed = room.getDrawing().applyShapeUpdate((ShapeUpdate) receivedObject);
+            if (changed != null) {
+                if (shown) {
+                    drawingPanel.repaint(changed);
+                }
+                broadcast(room, receivedObject, origin);
+            }
+        } else if (receivedObject instanceof StrokeSegment) {
+            StrokeSegment segment = (StrokeSegment) receivedObject;
+            FreehandShape stroke = room.getDrawing().applyStrokeSegment(segment);
+            if (stroke != null) {
+                if (shown) {
+                    drawingPanel.repaintStrokeSegment(stroke, segment);
+                }
+                broadcast(room, segment, origin);
+            }
+        }
+    }
 
-        Observable<Object> clientObservable = clientObservables.get(socket);
-        if (clientObservable != null) {
-            clientObservables.remove(socket);
+    /**
+     * Handles the disconnection of a peer from the server, cleans up resources. The peer is closed first, so
+     * the messages still arriving from it are dropped instead of joining it to a room again. Used by all server
+     * engines.
+     * @param peer is the disconnected peer.
+     */
+    protected void disconnectPeer(Peer peer) {
+        synchronized (peer) {
+            peer.close(false);
+            String roomName = peerRooms.remove(peer);
+            if (roomName != null) {
+                // Staged after the join and the messages of the peer, so it can't rejoin after leaving.
+                dispatcher.dispatch(() -> {
+                    Room room = rooms.get(roomName);
+                    if (room != null) {
+                        room.whenRestored(() -> {
+                            Rectangle changed = room.leave(peer);
+                            if (changed != null && room == defaultRoom && drawingPanel != null) {
+                                drawingPanel.repaint(changed);
+                            }
+                        });
+                    }
+                });
+            }
         }
 
-        try {
-            socket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (peer instanceof PeerConnection) {
+            Socket socket = ((PeerConnection) peer).getSocket();
+            clientSockets.remove(socket);
+            clientObservables.remove(socket);
         }
     }
 
@@ -258,9 +623,11 @@ public class Server implements ConnectionHandler, Serializable {
      * Handle server socket errors, logs and displays an error message
      * @param e is the exception
      */
-    private void handleServerSocketError(IOException e) {
+    protected void handleServerSocketError(IOException e) {
         e.printStackTrace();
-        mainFrame.setStatusMessage(Constants.FAIL_HOST_MSG);
+        if (mainFrame != null) {
+            mainFrame.setStatusMessage(Constants.FAIL_HOST_MSG);
+        }
     }
 
     /**
@@ -268,7 +635,10 @@ public class Server implements ConnectionHandler, Serializable {
      */
     @Override
     public void clearEvent() {
-        drawingPanel.clearDrawing();
+        if (drawingPanel != null) {
+            // Cleared on the EDT, the event loop, after the drawing is restored, like the broadcast of the clear.
+            defaultRoom.whenRestored(drawingPanel::clearDrawing);
+        }
         outgoingDataObserver.onNext(Constants.CLEAR);
     }
 
@@ -278,11 +648,62 @@ public class Server implements ConnectionHandler, Serializable {
     @Override
     public void shutDown() {
         acceptConnections = false;
+        // The rooms are changed on the event loop, so they are closed there too, after the work staged so far.
+        runOnLoop(() -> {
+            outgoingDataObserver.onComplete();
+            if (roomMaintenance != null) {
+                roomMaintenance.dispose();
+            }
+            for (Room room : rooms.values()) {
+                // Notify connected clients about server shutdown.
+                broadcast(room, Constants.SERVER_SHUT_DOWN, null);
+
+                // Let the writers send what is queued, including the shutdown message.
+                room.closePeers();
+                room.closeJournal();
+            }
+        });
+        stopAccepting();
+        // Let the evicted rooms finish writing their journals.
+        roomIoExecutor.shutdown();
+        try {
+            roomIoExecutor.awaitTermination(ROOM_IO_SHUTDOWN_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (relayExecutor != null) {
+            relayExecutor.shutdown();
+        }
+    }
 
-        // Notify connected clients about server shutdown.
-        outgoingDataObserver.onNext(Constants.SERVER_SHUT_DOWN);
-        outgoingDataObserver.onComplete();
+    /**
+     * Runs work on the event loop and waits for it, or runs it right away if already on the event loop.
+     * @param work is the work.
+     */
+    private void runOnLoop(Runnable work) {
+        if (relayExecutor == null && SwingUtilities.isEventDispatchThread()) {
+            work.run();
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        loop.scheduleDirect(() -> {
+            try {
+                work.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        try {
+            done.await(LOOP_SHUTDOWN_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    /**
+     * Stops accepting connections and releases the resources of the engine.
+     */
+    protected void stopAccepting() {
         // Stop all client threads.
         for (Thread clientThread : clientThreads) {
             clientThread.interrupt();
@@ -299,9 +720,11 @@ public class Server implements ConnectionHandler, Serializable {
 
         // Close the serverSocket.
         try {
-            serverSocket.close();
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
         } catch (IOException e) {
             handleServerSocketError(e);
         }
     }
-}
\ No newline at end of file
+}
@@ -16,6 +16,81 @@ import java.util.List;
 public abstract class Shape implements Drawable, Serializable {
 
     private static final long serialVersionUID = 1L;
+    private static final int CLIENT_ID_BITS = 24; // Keeps ids below 2^56, so they encode to at most 8 varint bytes.
+    private static final int SEQUENCE_BITS = 32;
+    /**
+     * The highest client id, a room hands out no more than this many.
+     */
+    public static final int MAX_CLIENT_ID = (1 << CLIENT_ID_BITS) - 1;
+    /**
+     * Client id that is never handed out, used before the room has handed out one and for messages from no client.
+     */
+    public static final int NO_CLIENT = 0;
+    private long id; // Set when the Shape is created here, from a ShapeIdSource, or decoded.
+
+    /**
+     * Packs the id of the client that created a Shape and the number of the Shape within that client into an id.
+     * @param clientId is the id of the client, at most {@link #MAX_CLIENT_ID}.
+     * @param sequence is the number of the Shape, all 32 bits are used.
+     * @return the id.
+     */
+    public static long idOf(int clientId, int sequence) {
+        return (long) clientId << SEQUENCE_BITS | (sequence & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Finds the id of the client that created a Shape.
+     * @param id is the id of the Shape.
+     * @return the id of the client.
+     */
+    public static int clientIdOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS);
+    }
+
+    /**
+     * Getter for the id of the Shape, unique among all peers, used for identifying it on the wire and in the Drawing.
+     * @return the id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Setter for the id of the Shape, used when a Shape is created here or decoded from the wire.
+     * @param id is the id.
+     */
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * Getter for the color of the Shape.
+     * @return the color.
+     */
+    public abstract Color getColor();
+
+    /**
+     * Getter for the thickness of the Shape.
+     * @return the thickness.
+     */
+    public abstract int getThickness();
+
+    /**
+     * Getter for the bounds of the Shape, including the width of the stroke, used for partial repaints.
+     * @return the bounds, empty if the Shape has nothing to draw.
+     */
+    public abstract Rectangle getBounds();
+
+    /**
+     * Grows bounds to cover a stroke of a given thickness drawn along them, including the corners.
+     * @param bounds is the bounds to grow.
+     * @param thickness is the thickness of the stroke.
+     * @return the grown bounds.
+     */
+    protected static Rectangle inflate(Rectangle bounds, int thickness) {
+        bounds.grow(thickness + 1, thickness + 1);
+        return bounds;
+    }
 
     /**
      * Method for drawing the Shape.
@@ -0,0 +1,168 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * <h1>ShapeIdMap</h1>
+ * Hash map from the ids of the shapes in a Drawing to their ordinals, the indexes in the drawing.
+ * The ids and ordinals are kept in two primitive arrays with open addressing and linear probing, so a lookup
+ * neither boxes the id nor follows a pointer per entry. Removing an entry moves the following entries of its
+ * probe sequence back, so the table never fills up with deleted markers.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ShapeIdMap implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * The ordinal returned for ids that aren't in the map, also marking the free slots of the table.
+     */
+    public static final int ABSENT = -1;
+    private static final int FIRST_CAPACITY = 64;
+    private static final long MIX = 0x9E3779B97F4A7C15L; // Spreads sequential ids over the table.
+    private long[] ids = new long[FIRST_CAPACITY];
+    private int[] ordinals = emptyOrdinals(FIRST_CAPACITY);
+    private int size = 0;
+
+    /**
+     * Getter for the ordinal of a shape.
+     * @param id is the id of the shape.
+     * @return the ordinal, or ABSENT if the id isn't in the map.
+     */
+    public int get(long id) {
+        int mask = ids.length - 1;
+        for (int slot = slotOf(id, mask); ordinals[slot] != ABSENT; slot = (slot + 1) & mask) {
+            if (ids[slot] == id) {
+                return ordinals[slot];
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Adds the ordinal of a shape, unless the id is already in the map.
+     * @param id is the id of the shape.
+     * @param ordinal is the ordinal, not negative.
+     * @return true if it was added, false if the id was already in the map.
+     */
+    public boolean putIfAbsent(long id, int ordinal) {
+        if ((size + 1) * 2 > ids.length) {
+            resize(ids.length * 2);
+        }
+        int mask = ids.length - 1;
+        int slot = slotOf(id, mask);
+        while (ordinals[slot] != ABSENT) {
+            if (ids[slot] == id) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        ids[slot] = id;
+        ordinals[slot] = ordinal;
+        size++;
+        return true;
+    }
+
+    /**
+     * Changes the ordinal of a shape, if it still has an expected ordinal.
+     * @param id is the id of the shape.
+     * @param expected is the ordinal the shape is expected to have.
+     * @param ordinal is the new ordinal, not negative.
+     * @return true if it was changed, false if the id wasn't in the map with the expected ordinal.
+     */
+    public boolean replace(long id, int expected, int ordinal) {
+        int mask = ids.length - 1;
+        for (int slot = slotOf(id, mask); ordinals[slot] != ABSENT; slot = (slot + 1) & mask) {
+            if (ids[slot] == id) {
+                if (ordinals[slot] != expected) {
+                    return false;
+                }
+                ordinals[slot] = ordinal;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes a shape from the map.
+     * @param id is the id of the shape.
+     * @return the ordinal the shape had, or ABSENT if the id wasn't in the map.
+     */
+    public int remove(long id) {
+        int mask = ids.length - 1;
+        int hole = slotOf(id, mask);
+        while (ordinals[hole] != ABSENT && ids[hole] != id) {
+            hole = (hole + 1) & mask;
+        }
+        int removed = ordinals[hole];
+        if (removed == ABSENT) {
+            return ABSENT;
+        }
+        // Move back every following entry whose home slot isn't between the hole and the entry.
+        for (int next = (hole + 1) & mask; ordinals[next] != ABSENT; next = (next + 1) & mask) {
+            int home = slotOf(ids[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                ids[hole] = ids[next];
+                ordinals[hole] = ordinals[next];
+                hole = next;
+            }
+        }
+        ordinals[hole] = ABSENT;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Getter for the number of shapes in the map.
+     * @return the number of shapes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves the entries to a table of another capacity.
+     * @param capacity is the new capacity, a power of two.
+     */
+    private void resize(int capacity) {
+        long[] oldIds = ids;
+        int[] oldOrdinals = ordinals;
+        ids = new long[capacity];
+        ordinals = emptyOrdinals(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldOrdinals[i] != ABSENT) {
+                int slot = slotOf(oldIds[i], mask);
+                while (ordinals[slot] != ABSENT) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[i];
+                ordinals[slot] = oldOrdinals[i];
+            }
+        }
+    }
+
+    /**
+     * Calculates the slot an id is probed from.
+     * @param id is the id.
+     * @param mask is the capacity of the table minus one.
+     * @return the slot.
+     */
+    private static int slotOf(long id, int mask) {
+        long mixed = id * MIX;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    /**
+     * Creates an array of free slots.
+     * @param capacity is the length of the array.
+     * @return the array.
+     */
+    private static int[] emptyOrdinals(int capacity) {
+        int[] empty = new int[capacity];
+        Arrays.fill(empty, ABSENT);
+        return empty;
+    }
+}
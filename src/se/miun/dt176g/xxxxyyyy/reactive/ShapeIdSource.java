@@ -0,0 +1,56 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>ShapeIdSource</h1>
+ * Hands out the ids of the Shapes created by one client or server GUI, packing the client id handed out by the
+ * room with a number that counts the Shapes created with that client id. Only Shapes created locally get their
+ * ids here, decoded Shapes keep the ids they were sent with. Each ConnectionHandler has a source of its own, so
+ * several of them can share a process.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ShapeIdSource {
+    private static final int LAST_SEQUENCE = -1; // The number 2^32 - 1, after which the client id is used up.
+    private int clientId = Shape.NO_CLIENT;
+    private int sequence = 0; // The number of the last Shape, read as unsigned.
+
+    /**
+     * Getter for the client id the Shapes are created with.
+     * @return the client id, or {@link Shape#NO_CLIENT} if none has been handed out yet.
+     */
+    public synchronized int getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Setter for the client id the Shapes are created with, handed out by the room when it is joined.
+     * The Shapes are counted from the start again, since no Shape has been created with the new client id.
+     * @param clientId is the client id.
+     */
+    public synchronized void setClientId(int clientId) {
+        this.clientId = clientId;
+        sequence = 0;
+    }
+
+    /**
+     * Checks if an id can be handed out, which it can once a client id has been handed out by the room and
+     * until every number has been used with it.
+     * @return true if {@link #next()} can be called.
+     */
+    public synchronized boolean hasNext() {
+        return clientId != Shape.NO_CLIENT && sequence != LAST_SEQUENCE;
+    }
+
+    /**
+     * Hands out the id of a new Shape.
+     * @return the id.
+     * @throws IllegalStateException if no id can be handed out, see {@link #hasNext()}.
+     */
+    public synchronized long next() {
+        if (!hasNext()) {
+            throw new IllegalStateException("No shape id left for client " + clientId);
+        }
+        return Shape.idOf(clientId, ++sequence);
+    }
+}
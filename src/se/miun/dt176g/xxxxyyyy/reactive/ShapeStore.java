@@ -0,0 +1,155 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <h1>ShapeStore</h1>
+ * Append-only store of Shapes that can be read while it is appended to, without locks.
+ * The shapes are kept in chunks which double in size, so a chunk is never copied or moved once created.
+ * An append claims the next free slot with a compare-and-set and then publishes the size; a thread that finds
+ * the slot already claimed publishes it for the other thread and tries the next one. Readers only see slots
+ * below the published size, so a view taken with {@link #view()} never grows. A removed shape leaves its slot
+ * empty, so the other shapes keep their indexes and removed shapes read as null.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ShapeStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int FIRST_CHUNK_BITS = 6; // The first chunk holds 64 shapes.
+    private static final int MAX_CHUNKS = 32 - FIRST_CHUNK_BITS;
+    // Marks the slot of a removed shape. It is never null again, so a late append can't claim it.
+    private static final Object REMOVED = new Object();
+    private final AtomicReferenceArray<AtomicReferenceArray<Object>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    /**
+     * Appends a shape.
+     * @param shape is the shape.
+     * @return the index of the shape.
+     */
+    public int add(Shape shape) {
+        while (true) {
+            int index = size.get();
+            AtomicReferenceArray<Object> chunk = chunkFor(index, true);
+            boolean claimed = chunk.compareAndSet(offsetOf(index), null, shape);
+            // Publish the slot, whether it was claimed by this thread or by another one that hasn't published it yet.
+            size.compareAndSet(index, index + 1);
+            if (claimed) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Removes a published shape, leaving its slot empty.
+     * @param index is the index of the shape.
+     * @return the removed shape, or null if it was already removed.
+     */
+    public Shape remove(int index) {
+        if (index < 0 || index >= size.get()) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return shapeOf(chunkFor(index, false).getAndSet(offsetOf(index), REMOVED));
+    }
+
+    /**
+     * Getter for the number of published shapes.
+     * @return the number of shapes.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Getter for a published shape.
+     * @param index is the index of the shape.
+     * @return the shape, or null if it was removed.
+     */
+    public Shape get(int index) {
+        if (index < 0 || index >= size.get()) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return shapeOf(chunkFor(index, false).get(offsetOf(index)));
+    }
+
+    /**
+     * Takes an immutable view of the shapes published so far, without copying them.
+     * @return the view.
+     */
+    public List<Shape> view() {
+        return new View(size.get());
+    }
+
+    /**
+     * Finds the chunk holding an index, creating it if needed.
+     * @param index is the index.
+     * @param create is true if a missing chunk should be created.
+     * @return the chunk.
+     */
+    private AtomicReferenceArray<Object> chunkFor(int index, boolean create) {
+        int chunkIndex = chunkIndexOf(index);
+        AtomicReferenceArray<Object> chunk = chunks.get(chunkIndex);
+        if (chunk == null && create) {
+            chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(1 << (FIRST_CHUNK_BITS + chunkIndex)));
+            chunk = chunks.get(chunkIndex);
+        }
+        return chunk;
+    }
+
+    /**
+     * Reads the shape in a slot.
+     * @param slot is the content of the slot.
+     * @return the shape, or null if it was removed.
+     */
+    private static Shape shapeOf(Object slot) {
+        return slot == REMOVED ? null : (Shape) slot;
+    }
+
+    /**
+     * Calculates which chunk holds an index. Chunk k starts at index 64 * (2^k - 1).
+     * @param index is the index.
+     * @return the chunk index.
+     */
+    private static int chunkIndexOf(int index) {
+        return 31 - Integer.numberOfLeadingZeros((index >>> FIRST_CHUNK_BITS) + 1);
+    }
+
+    /**
+     * Calculates the position of an index within its chunk.
+     * @param index is the index.
+     * @return the offset in the chunk.
+     */
+    private static int offsetOf(int index) {
+        return index - (((1 << chunkIndexOf(index)) - 1) << FIRST_CHUNK_BITS);
+    }
+
+    /**
+     * Fixed size list over the first shapes of the store.
+     */
+    private class View extends AbstractList<Shape> implements RandomAccess {
+        private final int viewSize;
+
+        View(int viewSize) {
+            this.viewSize = viewSize;
+        }
+
+        @Override
+        public Shape get(int index) {
+            if (index < 0 || index >= viewSize) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            return shapeOf(chunkFor(index, false).get(offsetOf(index)));
+        }
+
+        @Override
+        public int size() {
+            return viewSize;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.awt.*;
+
+/**
+ * <h1>ShapeUpdate</h1>
+ * A change to a rectangle, oval or line that is streamed while it is being dragged, so the other peers see a live
+ * preview. A preview is sent as one BEGIN update holding the whole shape, followed by MOVE updates holding only the
+ * id of the shape and its new end point. The finished shape is sent as a Shape, which ends the preview.
+ * The end point of a MOVE is absolute, so a MOVE that is dropped or replaced by a later one loses nothing.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ShapeUpdate {
+    private final Kind kind;
+    private final long shapeId;
+    private final Shape shape;
+    private final Point endPoint;
+
+    /**
+     * The kinds of shape updates.
+     */
+    public enum Kind {
+        BEGIN, MOVE
+    }
+
+    /**
+     * Constructor which sets all fields of the update.
+     * @param kind is the kind of update.
+     * @param shapeId is the id of the shape.
+     * @param shape is the shape, only used by BEGIN.
+     * @param endPoint is the new end point, only used by MOVE.
+     */
+    private ShapeUpdate(Kind kind, long shapeId, Shape shape, Point endPoint) {
+        this.kind = kind;
+        this.shapeId = shapeId;
+        this.shape = shape;
+        this.endPoint = endPoint;
+    }
+
+    /**
+     * Creates a BEGIN update holding a copy of the shape, so the shape can keep changing while it is sent.
+     * @param shape is the rectangle, oval or line.
+     * @return the update.
+     */
+    public static ShapeUpdate begin(Shape shape) {
+        Shape copy;
+        if (shape instanceof RectangleShape) {
+            RectangleShape rectangle = new RectangleShape(shape.getColor(), shape.getThickness());
+            rectangle.setStartPoint(((RectangleShape) shape).getStartPoint());
+            copy = rectangle;
+        } else if (shape instanceof OvalShape) {
+            OvalShape oval = new OvalShape(shape.getColor(), shape.getThickness());
+            oval.setStartPoint(((OvalShape) shape).getStartPoint());
+            copy = oval;
+        } else if (shape instanceof LineShape) {
+            LineShape line = new LineShape(shape.getColor(), shape.getThickness());
+            line.setStartPoint(((LineShape) shape).getStartPoint());
+            copy = line;
+        } else {
+            throw new IllegalArgumentException("Unsupported shape: " + shape.getClass().getName());
+        }
+        copy.setId(shape.getId());
+        setEndPoint(copy, getEndPoint(shape));
+        return new ShapeUpdate(Kind.BEGIN, shape.getId(), copy, null);
+    }
+
+    /**
+     * Creates a BEGIN update holding a decoded shape, which is used as is.
+     * @param shape is the decoded rectangle, oval or line.
+     * @return the update.
+     */
+    static ShapeUpdate decoded(Shape shape) {
+        return new ShapeUpdate(Kind.BEGIN, shape.getId(), shape, null);
+    }
+
+    /**
+     * Creates a MOVE update.
+     * @param shapeId is the id of the shape.
+     * @param endPoint is the new end point.
+     * @return the update.
+     */
+    public static ShapeUpdate move(long shapeId, Point endPoint) {
+        return new ShapeUpdate(Kind.MOVE, shapeId, null, endPoint);
+    }
+
+    /**
+     * Getter for the kind of update.
+     * @return the kind.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Getter for the id of the shape.
+     * @return the id.
+     */
+    public long getShapeId() {
+        return shapeId;
+    }
+
+    /**
+     * Getter for the shape of a BEGIN update.
+     * @return the shape, or null for a MOVE.
+     */
+    public Shape getShape() {
+        return shape;
+    }
+
+    /**
+     * Getter for the new end point of a MOVE update.
+     * @return the end point, or null for a BEGIN.
+     */
+    public Point getEndPoint() {
+        return endPoint;
+    }
+
+    /**
+     * Getter for the start point of a rectangle, oval or line.
+     * @param shape is the shape.
+     * @return the start point, or null if the shape has none.
+     */
+    static Point getStartPoint(Shape shape) {
+        if (shape instanceof RectangleShape) {
+            return ((RectangleShape) shape).getStartPoint();
+        } else if (shape instanceof OvalShape) {
+            return ((OvalShape) shape).getStartPoint();
+        } else if (shape instanceof LineShape) {
+            return ((LineShape) shape).getStartPoint();
+        }
+        return null;
+    }
+
+    /**
+     * Getter for the end point of a rectangle, oval or line.
+     * @param shape is the shape.
+     * @return the end point, or null if the shape has none.
+     */
+    static Point getEndPoint(Shape shape) {
+        if (shape instanceof RectangleShape) {
+            return ((RectangleShape) shape).getEndPoint();
+        } else if (shape instanceof OvalShape) {
+            return ((OvalShape) shape).getEndPoint();
+        } else if (shape instanceof LineShape) {
+            return ((LineShape) shape).getEndPoint();
+        }
+        return null;
+    }
+
+    /**
+     * Setter for the end point of a rectangle, oval or line, other shapes are left as they are.
+     * @param shape is the shape.
+     * @param endPoint is the end point.
+     */
+    static void setEndPoint(Shape shape, Point endPoint) {
+        if (shape instanceof RectangleShape) {
+            ((RectangleShape) shape).setEndPoint(endPoint);
+        } else if (shape instanceof OvalShape) {
+            ((OvalShape) shape).setEndPoint(endPoint);
+        } else if (shape instanceof LineShape) {
+            ((LineShape) shape).setEndPoint(endPoint);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+/**
+ * <h1>SnapshotChunk</h1>
+ * One chunk of a compressed snapshot of a Drawing, sent to a client when it joins.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class SnapshotChunk {
+    private final boolean last;
+    private final byte[] data;
+
+    /**
+     * Constructor which sets the data of the chunk.
+     * @param last is true if this is the last chunk of the snapshot.
+     * @param data is the compressed data.
+     */
+    public SnapshotChunk(boolean last, byte[] data) {
+        this.last = last;
+        this.data = data;
+    }
+
+    /**
+     * Checks if this is the last chunk of the snapshot.
+     * @return true if it is the last chunk.
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * Getter for the compressed data.
+     * @return the data.
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
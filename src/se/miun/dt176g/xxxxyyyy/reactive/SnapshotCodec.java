@@ -0,0 +1,124 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * <h1>SnapshotCodec</h1>
+ * Encodes a copy of a Drawing into compressed {@link SnapshotChunk}s and decodes them again.
+ * The uncompressed snapshot is the frames of all messages, each prefixed by its varint length.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class SnapshotCodec {
+    private static final int CHUNK_SIZE = 32 * 1024;
+
+    /**
+     * Encodes messages into compressed chunks.
+     * @param messages are the Shapes and StrokeSegments of the snapshot.
+     * @return the chunks, the last one is marked as last. There is always one, so an empty drawing also
+     * replaces the drawing of a client that couldn't resume.
+     */
+    public static List<SnapshotChunk> encode(List<?> messages) {
+        List<SnapshotChunk> chunks = new ArrayList<>();
+        FrameEncoder encoder = new FrameEncoder();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater, CHUNK_SIZE)) {
+            byte[] length = new byte[5];
+            for (Object message : messages) {
+                byte[] frame = encoder.encode(message);
+                out.write(length, 0, writeLength(length, frame.length));
+                out.write(frame);
+            }
+        } catch (IOException e) {
+            // Can't happen when writing to memory.
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+
+        byte[] bytes = compressed.toByteArray();
+        for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+            int end = Math.min(offset + CHUNK_SIZE, bytes.length);
+            chunks.add(new SnapshotChunk(end == bytes.length, Arrays.copyOfRange(bytes, offset, end)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Decodes the concatenated data of all chunks of a snapshot.
+     * @param compressed is the data of all chunks.
+     * @return the Shapes and StrokeSegments of the snapshot.
+     * @throws IOException if the data is malformed.
+     */
+    public static List<Object> decode(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(compressed.length * 4);
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new StreamCorruptedException("Truncated snapshot");
+                }
+                raw.write(buffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Malformed snapshot: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        FrameDecoder decoder = new FrameDecoder();
+        byte[] bytes = raw.toByteArray();
+        List<Object> messages = new ArrayList<>();
+        int position = 0;
+        while (position < bytes.length) {
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28 || position >= bytes.length) {
+                    throw new StreamCorruptedException("Malformed snapshot frame length");
+                }
+                byte b = bytes[position++];
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            if (length <= 0 || length > bytes.length - position) {
+                throw new StreamCorruptedException("Invalid snapshot frame length: " + length);
+            }
+            messages.add(decoder.decode(bytes, position, length));
+            position += length;
+        }
+        return messages;
+    }
+
+    /**
+     * Writes a varint length.
+     * @param buffer is the buffer to write to.
+     * @param length is the length.
+     * @return the number of bytes written.
+     */
+    private static int writeLength(byte[] buffer, int length) {
+        int position = 0;
+        while ((length & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        buffer[position++] = (byte) length;
+        return position;
+    }
+}
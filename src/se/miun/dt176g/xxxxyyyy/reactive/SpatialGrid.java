@@ -0,0 +1,149 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.awt.*;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>SpatialGrid</h1>
+ * Uniform grid index over the bounds of the shapes in a Drawing. Shapes are identified by their ordinal,
+ * the index in the drawing, so the drawing order is kept in query results.
+ * A cell may hold a shape that no longer covers it after its bounds changed, so callers check the actual
+ * bounds of the candidates.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class SpatialGrid implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int[] NO_ORDINALS = new int[0];
+    private final int cellSize;
+    // Each cell holds its count at index 0 followed by the ordinals.
+    private final Map<Long, int[]> cells = new HashMap<>();
+    // The range of cells each ordinal was added to, in cell coordinates.
+    private final List<Rectangle> indexedCells = new ArrayList<>();
+
+    /**
+     * Constructor which sets the size of the cells.
+     * @param cellSize is the width and height of a cell in pixels.
+     */
+    public SpatialGrid(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds a shape, or updates a shape whose bounds changed. A shape is only added to the cells it
+     * didn't already cover.
+     * @param ordinal is the index of the shape in the drawing.
+     * @param bounds is the bounds of the shape.
+     */
+    public void put(int ordinal, Rectangle bounds) {
+        while (indexedCells.size() <= ordinal) {
+            indexedCells.add(null);
+        }
+        if (bounds.isEmpty()) {
+            return;
+        }
+        Rectangle range = toCellRange(bounds);
+        Rectangle previous = indexedCells.get(ordinal);
+        if (previous != null && previous.contains(range)) {
+            return;
+        }
+        for (int cx = range.x; cx < range.x + range.width; cx++) {
+            for (int cy = range.y; cy < range.y + range.height; cy++) {
+                if (previous == null || !previous.contains(cx, cy)) {
+                    addToCell(cellKey(cx, cy), ordinal);
+                }
+            }
+        }
+        indexedCells.set(ordinal, previous == null ? range : previous.union(range));
+    }
+
+    /**
+     * Finds the shapes that may intersect an area.
+     * @param area is the area.
+     * @return the sorted ordinals of the candidates, without duplicates.
+     */
+    public int[] query(Rectangle area) {
+        if (area.isEmpty()) {
+            return NO_ORDINALS;
+        }
+        Rectangle range = toCellRange(area);
+        int[] result = new int[16];
+        int count = 0;
+        for (int cx = range.x; cx < range.x + range.width; cx++) {
+            for (int cy = range.y; cy < range.y + range.height; cy++) {
+                int[] cell = cells.get(cellKey(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                if (count + cell[0] > result.length) {
+                    result = Arrays.copyOf(result, Math.max(result.length * 2, count + cell[0]));
+                }
+                System.arraycopy(cell, 1, result, count, cell[0]);
+                count += cell[0];
+            }
+        }
+        Arrays.sort(result, 0, count);
+        // Remove the duplicates of shapes covering more than one cell.
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || result[unique - 1] != result[i]) {
+                result[unique++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, unique);
+    }
+
+    /**
+     * Removes all shapes.
+     */
+    public void clear() {
+        cells.clear();
+        indexedCells.clear();
+    }
+
+    /**
+     * Adds an ordinal to a cell.
+     * @param key is the key of the cell.
+     * @param ordinal is the ordinal.
+     */
+    private void addToCell(long key, int ordinal) {
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            cell = new int[4];
+            cells.put(key, cell);
+        } else if (cell[0] + 1 == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+            cells.put(key, cell);
+        }
+        cell[++cell[0]] = ordinal;
+    }
+
+    /**
+     * Converts an area in pixels to the range of cells covering it.
+     * @param area is the area.
+     * @return the range of cells.
+     */
+    private Rectangle toCellRange(Rectangle area) {
+        int x1 = Math.floorDiv(area.x, cellSize);
+        int y1 = Math.floorDiv(area.y, cellSize);
+        int x2 = Math.floorDiv(area.x + area.width - 1, cellSize);
+        int y2 = Math.floorDiv(area.y + area.height - 1, cellSize);
+        return new Rectangle(x1, y1, x2 - x1 + 1, y2 - y1 + 1);
+    }
+
+    /**
+     * Packs the coordinates of a cell into a key.
+     * @param cx is the x coordinate of the cell.
+     * @param cy is the y coordinate of the cell.
+     * @return the key.
+     */
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,118 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * <h1>StrokeSegment</h1>
+ * A part of a freehand stroke that is streamed while it is being drawn.
+ * A stroke is sent as one BEGIN segment, any number of APPEND segments with new points, and one END segment.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class StrokeSegment {
+    private static final int[] NO_POINTS = new int[0];
+    private final Kind kind;
+    private final long shapeId;
+    private final Color color;
+    private final int thickness;
+    private final int[] points;
+
+    /**
+     * The kinds of stroke segments.
+     */
+    public enum Kind {
+        BEGIN, APPEND, END
+    }
+
+    /**
+     * Constructor which sets all fields of the segment.
+     * @param kind is the kind of segment.
+     * @param shapeId is the id of the FreehandShape.
+     * @param color is the color, only used by BEGIN.
+     * @param thickness is the thickness, only used by BEGIN.
+     * @param points are the points as x and y pairs.
+     */
+    public StrokeSegment(Kind kind, long shapeId, Color color, int thickness, int[] points) {
+        this.kind = kind;
+        this.shapeId = shapeId;
+        this.color = color;
+        this.thickness = thickness;
+        this.points = points;
+    }
+
+    /**
+     * Creates a BEGIN segment holding a copy of the points the shape has so far.
+     * @param shape is the FreehandShape.
+     * @return the segment.
+     */
+    public static StrokeSegment begin(FreehandShape shape) {
+        int[] points = new int[shape.getPointCount() * 2];
+        for (int i = 0; i < shape.getPointCount(); i++) {
+            points[i * 2] = shape.getX(i);
+            points[i * 2 + 1] = shape.getY(i);
+        }
+        return new StrokeSegment(Kind.BEGIN, shape.getId(), shape.getColor(), shape.getThickness(), points);
+    }
+
+    /**
+     * Creates an APPEND segment.
+     * @param shapeId is the id of the FreehandShape.
+     * @param points are the new points as x and y pairs.
+     * @param count is the number of points to use from the array.
+     * @return the segment.
+     */
+    public static StrokeSegment append(long shapeId, int[] points, int count) {
+        return new StrokeSegment(Kind.APPEND, shapeId, null, 0, Arrays.copyOf(points, count * 2));
+    }
+
+    /**
+     * Creates an END segment.
+     * @param shapeId is the id of the FreehandShape.
+     * @return the segment.
+     */
+    public static StrokeSegment end(long shapeId) {
+        return new StrokeSegment(Kind.END, shapeId, null, 0, NO_POINTS);
+    }
+
+    /**
+     * Getter for the kind of segment.
+     * @return the kind.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Getter for the id of the FreehandShape.
+     * @return the id.
+     */
+    public long getShapeId() {
+        return shapeId;
+    }
+
+    /**
+     * Getter for the color, only set for BEGIN.
+     * @return the color.
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Getter for the thickness, only set for BEGIN.
+     * @return the thickness.
+     */
+    public int getThickness() {
+        return thickness;
+    }
+
+    /**
+     * Getter for the points as x and y pairs.
+     * @return the points.
+     */
+    public int[] getPoints() {
+        return points;
+    }
+}
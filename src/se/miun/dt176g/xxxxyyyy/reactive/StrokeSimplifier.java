@@ -0,0 +1,108 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.util.Arrays;
+
+/**
+ * <h1>StrokeSimplifier</h1>
+ * Simplifies the points of freehand strokes with the Ramer-Douglas-Peucker algorithm,
+ * removing points that lie within a tolerance of the line between the points that are kept.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public final class StrokeSimplifier {
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private StrokeSimplifier() {
+    }
+
+    /**
+     * Simplifies a batch of points following an anchor point. The anchor is the last point that
+     * is already part of the stroke, it is kept fixed but not included in the result.
+     * The last point of the batch is always kept.
+     * @param anchorX is the x coordinate of the anchor.
+     * @param anchorY is the y coordinate of the anchor.
+     * @param points are the points as x and y pairs.
+     * @param count is the number of points.
+     * @param tolerance is the largest distance, in pixels, a removed point may have from the simplified path.
+     * @return the kept points as x and y pairs.
+     */
+    public static int[] simplify(int anchorX, int anchorY, int[] points, int count, double tolerance) {
+        if (count <= 1 || tolerance <= 0) {
+            return Arrays.copyOf(points, count * 2);
+        }
+        // Index 0 is the anchor, the points of the batch follow.
+        int[] xs = new int[count + 1];
+        int[] ys = new int[count + 1];
+        xs[0] = anchorX;
+        ys[0] = anchorY;
+        for (int i = 0; i < count; i++) {
+            xs[i + 1] = points[i * 2];
+            ys[i + 1] = points[i * 2 + 1];
+        }
+        boolean[] keep = new boolean[count + 1];
+        keep[0] = true;
+        keep[count] = true;
+
+        // Split the ranges iteratively, so long batches can't overflow the stack.
+        int[] stack = new int[(count + 1) * 2];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count;
+        double toleranceSquared = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestDistance = toleranceSquared;
+            for (int i = first + 1; i < last; i++) {
+                double distance = distanceSquared(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        int[] kept = new int[count * 2];
+        int keptCount = 0;
+        for (int i = 1; i <= count; i++) {
+            if (keep[i]) {
+                kept[keptCount * 2] = xs[i];
+                kept[keptCount * 2 + 1] = ys[i];
+                keptCount++;
+            }
+        }
+        return Arrays.copyOf(kept, keptCount * 2);
+    }
+
+    /**
+     * Calculates the squared distance from a point to the line segment between two points.
+     * @param px is the x coordinate of the point.
+     * @param py is the y coordinate of the point.
+     * @param ax is the x coordinate of the start of the segment.
+     * @param ay is the y coordinate of the start of the segment.
+     * @param bx is the x coordinate of the end of the segment.
+     * @param by is the y coordinate of the end of the segment.
+     * @return the squared distance.
+     */
+    private static double distanceSquared(int px, int py, int ax, int ay, int bx, int by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,27 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import javax.swing.*;
+
+/**
+ * <h1>SwingScheduler</h1>
+ * Holds a scheduler which runs its work on the Swing event dispatch thread,
+ * for observing streams where the GUI and the drawing are changed.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public final class SwingScheduler {
+    /**
+     * Scheduler running tasks with {@link SwingUtilities#invokeLater(Runnable)}.
+     */
+    public static final Scheduler EDT = Schedulers.from(SwingUtilities::invokeLater);
+
+    /**
+     * Private constructor, the class only holds the scheduler.
+     */
+    private SwingScheduler() {
+    }
+}
@@ -0,0 +1,233 @@
+package se.miun.dt176g.xxxxyyyy.reactive;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h1>TimeHistogram</h1>
+ * Histogram of durations that any thread can record to without locks. Each power of two is split into
+ * eight buckets, so percentiles are within 12.5% of the recorded durations. The statistics are taken
+ * over the durations recorded between two calls to {@link #sample()}.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class TimeHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final long[] sampledCounts = new long[BUCKETS]; // The counts at the last sample.
+    private long totalCount = 0;
+    private volatile Stats last = new Stats(0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Records a duration.
+     * @param nanos is the duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(nanos));
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Records the time since a start time.
+     * @param startNanos is the start time from {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Takes the statistics of the durations recorded since the last sample.
+     * @return the statistics.
+     */
+    public synchronized Stats sample() {
+        long[] interval = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long current = counts.get(i);
+            interval[i] = current - sampledCounts[i];
+            sampledCounts[i] = current;
+            count += interval[i];
+        }
+        totalCount += count;
+        long intervalSum = sum.sumThenReset();
+        long intervalMax = max.getThenReset();
+        double maxMicros = toMicros(intervalMax);
+        // The buckets are rounded up, so a percentile is capped at the longest duration.
+        last = new Stats(totalCount, count, count == 0 ? 0 : toMicros(intervalSum / count),
+                Math.min(percentile(interval, count, 0.5), maxMicros),
+                Math.min(percentile(interval, count, 0.9), maxMicros),
+                Math.min(percentile(interval, count, 0.99), maxMicros), maxMicros);
+        return last;
+    }
+
+    /**
+     * Getter for the statistics taken by the last sample.
+     * @return the statistics.
+     */
+    public Stats getLast() {
+        return last;
+    }
+
+    /**
+     * Finds the bucket of a duration.
+     * @param nanos is the duration.
+     * @return the index of the bucket.
+     */
+    private static int indexOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Finds the highest duration that falls in a bucket.
+     * @param index is the index of the bucket.
+     * @return the duration in nanoseconds.
+     */
+    private static long highestIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return ((long) (SUB_BUCKETS + index % SUB_BUCKETS + 1) << shift) - 1;
+    }
+
+    /**
+     * Finds a percentile of the durations counted in the buckets.
+     * @param buckets are the counts of the buckets.
+     * @param count is the sum of the counts.
+     * @param fraction is the percentile as a fraction, such as 0.99.
+     * @return the percentile in microseconds.
+     */
+    private static double percentile(long[] buckets, long count, double fraction) {
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0) {
+                return toMicros(highestIn(i));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Converts nanoseconds to microseconds.
+     * @param nanos is the duration in nanoseconds.
+     * @return the duration in microseconds.
+     */
+    private static double toMicros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    /**
+     * <h1>Stats</h1>
+     * The statistics of a histogram over one sampling interval, in microseconds.
+     */
+    public static class Stats {
+        private final long count;
+        private final long intervalCount;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p90Micros;
+        private final double p99Micros;
+        private final double maxMicros;
+
+        /**
+         * Constructor which sets all the statistics.
+         * @param count is the number of durations recorded since the histogram was created.
+         * @param intervalCount is the number of durations recorded in the interval.
+         * @param meanMicros is the mean.
+         * @param p50Micros is the median.
+         * @param p90Micros is the 90th percentile.
+         * @param p99Micros is the 99th percentile.
+         * @param maxMicros is the longest duration.
+         */
+        public Stats(long count, long intervalCount, double meanMicros, double p50Micros, double p90Micros,
+                     double p99Micros, double maxMicros) {
+            this.count = count;
+            this.intervalCount = intervalCount;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        /**
+         * Getter for the number of durations recorded since the histogram was created.
+         * @return the number.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Getter for the number of durations recorded in the interval.
+         * @return the number.
+         */
+        public long getIntervalCount() {
+            return intervalCount;
+        }
+
+        /**
+         * Getter for the mean of the interval.
+         * @return the duration in microseconds.
+         */
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        /**
+         * Getter for the median of the interval.
+         * @return the duration in microseconds.
+         */
+        public double getP50Micros() {
+            return p50Micros;
+        }
+
+        /**
+         * Getter for the 90th percentile of the interval.
+         * @return the duration in microseconds.
+         */
+        public double getP90Micros() {
+            return p90Micros;
+        }
+
+        /**
+         * Getter for the 99th percentile of the interval.
+         * @return the duration in microseconds.
+         */
+        public double getP99Micros() {
+            return p99Micros;
+        }
+
+        /**
+         * Getter for the longest duration of the interval.
+         * @return the duration in microseconds.
+         */
+        public double getMaxMicros() {
+            return maxMicros;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("n=%d mean %.1f p50 %.1f p90 %.1f p99 %.1f max %.1f us",
+                    intervalCount, meanMicros, p50Micros, p90Micros, p99Micros, maxMicros);
+        }
+    }
+}
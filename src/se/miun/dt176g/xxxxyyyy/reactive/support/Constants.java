@@ -17,11 +17,54 @@ public interface Constants {
     String FAIL_CONNECT_MSG = "Failed to connect to a server, make sure one is running.";
     String FAIL_HOST_MSG = "Failed to host the server. Try again";
     String SERVER = "You are running the server";
-    String SERVER_DC = "The server has disconnected, make sure a server is running and then restart.";
+    String SERVER_DC = "The server has shut down, reconnecting once it is running again.";
+    String RECONNECT_MSG = "Lost the connection to the server, reconnecting...";
     String CLEAR = "clear";
     String SERVER_SHUT_DOWN = "server_shutdown";
     String CLIENT_SHUT_DOWN = "client_shutdown";
 
     String ADDRESS = "localhost";
     int PORT = 12345;
+    String PORT_PROPERTY = "reactive.port"; // 0 lets the server listen on any free port.
+
+    int PREVIEW_INTERVAL_MS = 16;
+    int EDT_BATCH_INTERVAL_MS = 16;
+    int STROKE_FLUSH_INTERVAL_MS = 30;
+    int STROKE_FLUSH_POINTS = 32;
+    int MIN_POINT_DISTANCE = 2;
+    double STROKE_TOLERANCE = 1.0;
+    String MIN_POINT_DISTANCE_PROPERTY = "reactive.minPointDistance";
+    String STROKE_TOLERANCE_PROPERTY = "reactive.strokeTolerance";
+
+    int OUTBOUND_QUEUE_CAPACITY = 1024;
+    int BATCH_WINDOW_MS = 2;
+    int BATCH_MAX_FRAMES = 64;
+    int BATCH_MAX_BYTES = 32 * 1024;
+    String OVERFLOW_POLICY_PROPERTY = "reactive.overflowPolicy";
+    int MAX_PEER_FRAME_LENGTH = 1024 * 1024;
+    String MAX_PEER_FRAME_LENGTH_PROPERTY = "reactive.maxPeerFrameLength";
+    String SERVER_ENGINE_PROPERTY = "reactive.serverEngine";
+    String HEADLESS_PROPERTY = "reactive.headless";
+    String JOURNAL_PROPERTY = "reactive.journal";
+    String JOURNAL_FILE = "drawing.journal";
+    int JOURNAL_COMPACT_INTERVAL_S = 30;
+    long JOURNAL_COMPACT_MIN_BYTES = 1024 * 1024;
+
+    String DEFAULT_ROOM = "default";
+    String ROOM_PROPERTY = "reactive.room";
+    String ROOM_NAME_PATTERN = "[A-Za-z0-9_-]{1,64}";
+    String ROOM_DIRECTORY_PROPERTY = "reactive.roomDirectory";
+    String ROOM_DIRECTORY = "rooms";
+    String ROOM_JOURNAL_SUFFIX = ".journal";
+    int ROOM_IDLE_TIMEOUT_S = 300;
+    int REPLAY_BUFFER_FRAMES = 8192;
+    long REPLAY_BUFFER_BYTES = 4 * 1024 * 1024;
+    String REPLAY_BUFFER_FRAMES_PROPERTY = "reactive.replayBufferFrames";
+    String REPLAY_BUFFER_BYTES_PROPERTY = "reactive.replayBufferBytes";
+    int RESUMABLE_SESSIONS = 1024;
+    int RECONNECT_INTERVAL_MS = 1000;
+
+    int METRICS_INTERVAL_S = 5;
+    String METRICS_INTERVAL_PROPERTY = "reactive.metricsInterval";
+    String METRICS_DUMP_PROPERTY = "reactive.metricsDump";
 }
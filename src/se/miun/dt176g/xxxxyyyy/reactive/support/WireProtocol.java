@@ -0,0 +1,53 @@
+package se.miun.dt176g.xxxxyyyy.reactive.support;
+
+/**
+ * <h1>WireProtocol</h1>
+ * Interface that define the constant values of the binary wire protocol.
+ * A stream starts with the magic bytes and the protocol version, followed by frames
+ * consisting of a varint payload length and a payload starting with a type tag.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public interface WireProtocol {
+    int MAGIC = 0x52504E54; // "RPNT"
+    int VERSION = 1;
+    int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // Shape type tags.
+    byte TAG_RECTANGLE = 1;
+    byte TAG_OVAL = 2;
+    byte TAG_LINE = 3;
+    byte TAG_FREEHAND = 4;
+
+    // Shape update type tags. BEGIN is followed by a whole Shape frame, MOVE by an id and an absolute end point.
+    byte TAG_SHAPE_BEGIN = 6;
+    byte TAG_SHAPE_MOVE = 7;
+
+    // Stroke segment type tags.
+    byte TAG_STROKE_BEGIN = 8;
+    byte TAG_STROKE_APPEND = 9;
+    byte TAG_STROKE_END = 10;
+
+    // Snapshot chunk type tag.
+    byte TAG_SNAPSHOT_CHUNK = 12;
+
+    // Batch type tag, the payload holds a count followed by length prefixed frames.
+    byte TAG_BATCH = 13;
+
+    // Room handshake type tags. JOIN_ROOM holds the UTF-8 name of the room, RESUME_ROOM the session of the client
+    // and the history and sequence number it last applied as varints, followed by the name.
+    byte TAG_JOIN_ROOM = 14;
+    byte TAG_RESUME_ROOM = 15;
+
+    // Control type tags.
+    byte TAG_CLEAR = 16;
+    byte TAG_SERVER_SHUT_DOWN = 17;
+    byte TAG_CLIENT_SHUT_DOWN = 18;
+
+    // Resume point type tags. RESUME_POINT holds the history of a room, a sequence number, and the client id and
+    // session handed out to the client as varints, SEQUENCE_MARK only the sequence number, within the history of
+    // the last one.
+    byte TAG_RESUME_POINT = 19;
+    byte TAG_SEQUENCE_MARK = 20;
+}
@@ -0,0 +1,229 @@
+package se.miun.dt176g.xxxxyyyy.reactive.tests;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameDecoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameEncoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FreehandShape;
+import se.miun.dt176g.xxxxyyyy.reactive.JoinRoom;
+import se.miun.dt176g.xxxxyyyy.reactive.LineShape;
+import se.miun.dt176g.xxxxyyyy.reactive.MessageBatch;
+import se.miun.dt176g.xxxxyyyy.reactive.OvalShape;
+import se.miun.dt176g.xxxxyyyy.reactive.RectangleShape;
+import se.miun.dt176g.xxxxyyyy.reactive.ResumePoint;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.ShapeUpdate;
+import se.miun.dt176g.xxxxyyyy.reactive.SnapshotChunk;
+import se.miun.dt176g.xxxxyyyy.reactive.StrokeSegment;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>FrameCodecTest</h1>
+ * Checks that every message the FrameEncoder writes is read back the same by the FrameDecoder, and that
+ * frames cut short are rejected.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class FrameCodecTest {
+    private static final long ID = Shape.idOf(Shape.MAX_CLIENT_ID, -1); // The largest id, all bits in use.
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final FrameDecoder decoder = new FrameDecoder();
+
+    /**
+     * Encodes a message and decodes it again.
+     * @param message is the message.
+     * @return the decoded message.
+     * @throws StreamCorruptedException if the frame can't be decoded.
+     */
+    private Object roundTrip(Object message) throws StreamCorruptedException {
+        return decoder.decode(encoder.encode(message));
+    }
+
+    /**
+     * Rectangles, ovals and lines keep their id, color, thickness and points.
+     */
+    @Test
+    public void shapes() throws StreamCorruptedException {
+        RectangleShape rectangle = new RectangleShape(new Color(1, 2, 3), 4);
+        rectangle.setStartPoint(new Point(-5, 6));
+        rectangle.setEndPoint(new Point(70000, -80000));
+        rectangle.setId(ID);
+        RectangleShape decodedRectangle = assertInstanceOf(RectangleShape.class, roundTrip(rectangle));
+        assertEquals(ID, decodedRectangle.getId());
+        assertEquals(rectangle.getColor(), decodedRectangle.getColor());
+        assertEquals(4, decodedRectangle.getThickness());
+        assertEquals(rectangle.getStartPoint(), decodedRectangle.getStartPoint());
+        assertEquals(rectangle.getEndPoint(), decodedRectangle.getEndPoint());
+
+        OvalShape oval = new OvalShape(Color.RED, 1);
+        oval.setStartPoint(new Point(0, 0));
+        oval.setEndPoint(new Point(10, 20));
+        oval.setId(ID + 1);
+        OvalShape decodedOval = assertInstanceOf(OvalShape.class, roundTrip(oval));
+        assertEquals(oval.getId(), decodedOval.getId());
+        assertEquals(oval.getStartPoint(), decodedOval.getStartPoint());
+        assertEquals(oval.getEndPoint(), decodedOval.getEndPoint());
+
+        LineShape line = new LineShape(Color.BLUE, 12);
+        line.setStartPoint(new Point(3, 4));
+        line.setEndPoint(new Point(3, 4));
+        LineShape decodedLine = assertInstanceOf(LineShape.class, roundTrip(line));
+        assertEquals(line.getColor(), decodedLine.getColor());
+        assertEquals(line.getStartPoint(), decodedLine.getStartPoint());
+        assertEquals(line.getEndPoint(), decodedLine.getEndPoint());
+    }
+
+    /**
+     * A freehand stroke keeps all of its points.
+     */
+    @Test
+    public void freehand() throws StreamCorruptedException {
+        FreehandShape stroke = new FreehandShape(Color.GREEN, 3);
+        for (int i = 0; i < 1000; i++) {
+            stroke.addPoint(i * 7 - 3000, 5000 - i * 3);
+        }
+        stroke.setId(ID);
+        FreehandShape decoded = assertInstanceOf(FreehandShape.class, roundTrip(stroke));
+        assertEquals(ID, decoded.getId());
+        assertEquals(stroke.getPointCount(), decoded.getPointCount());
+        for (int i = 0; i < stroke.getPointCount(); i++) {
+            assertEquals(stroke.getX(i), decoded.getX(i));
+            assertEquals(stroke.getY(i), decoded.getY(i));
+        }
+    }
+
+    /**
+     * Stroke segments of every kind keep their shape id and points.
+     */
+    @Test
+    public void strokeSegments() throws StreamCorruptedException {
+        FreehandShape stroke = new FreehandShape(Color.MAGENTA, 5);
+        stroke.addPoint(10, 10);
+        stroke.setId(ID);
+        StrokeSegment begin = assertInstanceOf(StrokeSegment.class, roundTrip(StrokeSegment.begin(stroke)));
+        assertEquals(StrokeSegment.Kind.BEGIN, begin.getKind());
+        assertEquals(ID, begin.getShapeId());
+        assertEquals(Color.MAGENTA, begin.getColor());
+        assertEquals(5, begin.getThickness());
+        assertArrayEquals(new int[] {10, 10}, begin.getPoints());
+
+        int[] points = {11, 12, 9, 8, 100, -100};
+        StrokeSegment append = assertInstanceOf(StrokeSegment.class,
+                roundTrip(StrokeSegment.append(ID, points, 3)));
+        assertEquals(StrokeSegment.Kind.APPEND, append.getKind());
+        assertArrayEquals(points, append.getPoints());
+
+        StrokeSegment end = assertInstanceOf(StrokeSegment.class, roundTrip(StrokeSegment.end(ID)));
+        assertEquals(StrokeSegment.Kind.END, end.getKind());
+        assertEquals(ID, end.getShapeId());
+    }
+
+    /**
+     * Previews begin with their shape and move by their end point.
+     */
+    @Test
+    public void shapeUpdates() throws StreamCorruptedException {
+        LineShape line = new LineShape(Color.BLACK, 2);
+        line.setStartPoint(new Point(1, 2));
+        line.setEndPoint(new Point(30, 40));
+        line.setId(ID);
+        ShapeUpdate begin = assertInstanceOf(ShapeUpdate.class, roundTrip(ShapeUpdate.begin(line)));
+        assertEquals(ShapeUpdate.Kind.BEGIN, begin.getKind());
+        assertEquals(line.getId(), begin.getShapeId());
+        LineShape preview = assertInstanceOf(LineShape.class, begin.getShape());
+        assertEquals(line.getStartPoint(), preview.getStartPoint());
+        assertEquals(line.getEndPoint(), preview.getEndPoint());
+
+        ShapeUpdate move = assertInstanceOf(ShapeUpdate.class,
+                roundTrip(ShapeUpdate.move(line.getId(), new Point(-7, 8))));
+        assertEquals(ShapeUpdate.Kind.MOVE, move.getKind());
+        assertEquals(line.getId(), move.getShapeId());
+        assertEquals(new Point(-7, 8), move.getEndPoint());
+    }
+
+    /**
+     * Joining, resuming and the resume points sent back keep all of their fields.
+     */
+    @Test
+    public void roomMessages() throws StreamCorruptedException {
+        JoinRoom join = assertInstanceOf(JoinRoom.class, roundTrip(new JoinRoom("room")));
+        assertEquals("room", join.getRoom());
+        assertEquals(ResumePoint.NO_SESSION, join.getSession());
+
+        JoinRoom resume = assertInstanceOf(JoinRoom.class,
+                roundTrip(new JoinRoom("r\u00e4tt", Long.MAX_VALUE, 42, 1L << 40)));
+        assertEquals("r\u00e4tt", resume.getRoom());
+        assertEquals(Long.MAX_VALUE, resume.getSession());
+        assertEquals(42, resume.getHistory());
+        assertEquals(1L << 40, resume.getSequence());
+
+        ResumePoint point = assertInstanceOf(ResumePoint.class,
+                roundTrip(new ResumePoint(7, 8, Shape.MAX_CLIENT_ID, 1234567890123L)));
+        assertFalse(point.isMark());
+        assertEquals(7, point.getHistory());
+        assertEquals(8, point.getSequence());
+        assertEquals(Shape.MAX_CLIENT_ID, point.getClientId());
+        assertEquals(1234567890123L, point.getSession());
+
+        ResumePoint mark = assertInstanceOf(ResumePoint.class, roundTrip(ResumePoint.mark(99)));
+        assertTrue(mark.isMark());
+        assertEquals(99, mark.getSequence());
+    }
+
+    /**
+     * Control messages and snapshot chunks are read back as sent.
+     */
+    @Test
+    public void controlMessages() throws StreamCorruptedException {
+        assertEquals(Constants.CLEAR, roundTrip(Constants.CLEAR));
+        assertEquals(Constants.SERVER_SHUT_DOWN, roundTrip(Constants.SERVER_SHUT_DOWN));
+        assertEquals(Constants.CLIENT_SHUT_DOWN, roundTrip(Constants.CLIENT_SHUT_DOWN));
+
+        byte[] data = {1, 2, 3, -1};
+        SnapshotChunk chunk = assertInstanceOf(SnapshotChunk.class, roundTrip(new SnapshotChunk(true, data)));
+        assertTrue(chunk.isLast());
+        assertArrayEquals(data, chunk.getData());
+    }
+
+    /**
+     * A batch frame holds the messages of its frames in order, including a sequence mark.
+     */
+    @Test
+    public void batch() throws StreamCorruptedException {
+        byte[] batch = FrameEncoder.encodeBatch(List.of(encoder.encode(Constants.CLEAR),
+                encoder.encode(StrokeSegment.end(ID)), FrameEncoder.encodeSequenceMark(5)));
+        List<Object> messages = assertInstanceOf(MessageBatch.class, decoder.decode(batch)).getMessages();
+        assertEquals(3, messages.size());
+        assertEquals(Constants.CLEAR, messages.get(0));
+        assertEquals(ID, assertInstanceOf(StrokeSegment.class, messages.get(1)).getShapeId());
+        assertEquals(5, assertInstanceOf(ResumePoint.class, messages.get(2)).getSequence());
+    }
+
+    /**
+     * A frame cut short anywhere is rejected instead of read past its end.
+     */
+    @Test
+    public void truncatedFrames() {
+        FreehandShape stroke = new FreehandShape(Color.ORANGE, 2);
+        stroke.addPoint(1000, 2000);
+        stroke.addPoint(-1000, 3000);
+        byte[] frame = encoder.encode(stroke);
+        for (int length = 0; length < frame.length; length++) {
+            byte[] truncated = Arrays.copyOf(frame, length);
+            assertThrows(StreamCorruptedException.class, () -> decoder.decode(truncated), "length " + length);
+        }
+    }
+}
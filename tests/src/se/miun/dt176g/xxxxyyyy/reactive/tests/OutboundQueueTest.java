@@ -0,0 +1,197 @@
+package se.miun.dt176g.xxxxyyyy.reactive.tests;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameDecoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameEncoder;
+import se.miun.dt176g.xxxxyyyy.reactive.LineShape;
+import se.miun.dt176g.xxxxyyyy.reactive.MessageBatch;
+import se.miun.dt176g.xxxxyyyy.reactive.OutboundQueue;
+import se.miun.dt176g.xxxxyyyy.reactive.OverflowPolicy;
+import se.miun.dt176g.xxxxyyyy.reactive.ResumePoint;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.ShapeUpdate;
+import se.miun.dt176g.xxxxyyyy.reactive.StrokeSegment;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.StreamCorruptedException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>OutboundQueueTest</h1>
+ * Checks what each overflow policy does with a full queue, and how queued frames are taken out.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class OutboundQueueTest {
+    private static final int CAPACITY = 4;
+    private final FrameEncoder encoder = new FrameEncoder();
+
+    /**
+     * Creates a finished line.
+     * @param id is the id of the line.
+     * @param x is where the line ends.
+     * @return the line.
+     */
+    private static Shape line(long id, int x) {
+        LineShape line = new LineShape(Color.BLACK, 1);
+        line.setStartPoint(new Point(0, 0));
+        line.setEndPoint(new Point(x, x));
+        line.setId(id);
+        return line;
+    }
+
+    /**
+     * Offers a message with the key the senders use for it.
+     * @param queue is the queue.
+     * @param message is the message.
+     * @return the frame that was offered.
+     */
+    private byte[] offer(OutboundQueue queue, Object message) {
+        byte[] frame = encoder.encode(message);
+        assertTrue(queue.offer(OutboundQueue.keyOf(message), frame));
+        return frame;
+    }
+
+    /**
+     * Finished shapes and moves are keyed by their shape, everything else can't be coalesced.
+     */
+    @Test
+    public void keys() {
+        assertEquals(7, OutboundQueue.keyOf(line(7, 1)));
+        assertEquals(7, OutboundQueue.keyOf(ShapeUpdate.move(7, new Point(1, 1))));
+        assertEquals(OutboundQueue.NO_KEY, OutboundQueue.keyOf(ShapeUpdate.begin(line(7, 1))));
+        assertEquals(OutboundQueue.NO_KEY, OutboundQueue.keyOf(StrokeSegment.end(7)));
+        assertEquals(OutboundQueue.NO_KEY, OutboundQueue.keyOf(Constants.CLEAR));
+    }
+
+    /**
+     * A full COALESCE queue replaces the queued move of the same preview in place, and otherwise drops the oldest
+     * move of a preview. A finished shape drops the move of its preview instead and is queued last.
+     */
+    @Test
+    public void coalesce() {
+        OutboundQueue queue = new OutboundQueue(CAPACITY, OverflowPolicy.COALESCE);
+        offer(queue, ShapeUpdate.move(1, new Point(1, 1)));
+        byte[] line = offer(queue, line(2, 1));
+        byte[] clear = offer(queue, Constants.CLEAR);
+        offer(queue, ShapeUpdate.move(3, new Point(1, 1)));
+
+        byte[] newerMove = offer(queue, ShapeUpdate.move(3, new Point(2, 2)));
+        assertEquals(CAPACITY, queue.size(), "the newer move replaces the queued move of its preview");
+        byte[] newerLine = offer(queue, line(2, 2));
+        assertEquals(List.of(line, clear, newerMove, newerLine), queue.closeAndTake(),
+                "the oldest move is dropped for the newer line, which isn't moved ahead of the clear");
+    }
+
+    /**
+     * The move of a preview is never coalesced across a clear, and a finished shape drops the queued move of its
+     * preview rather than taking its place.
+     */
+    @Test
+    public void coalesceKeepsOrder() {
+        OutboundQueue queue = new OutboundQueue(CAPACITY, OverflowPolicy.COALESCE);
+        offer(queue, ShapeUpdate.move(1, new Point(1, 1)));
+        byte[] clear = offer(queue, Constants.CLEAR);
+        byte[] segment = offer(queue, StrokeSegment.end(2));
+        byte[] move = offer(queue, ShapeUpdate.move(3, new Point(1, 1)));
+
+        byte[] newerMove = offer(queue, ShapeUpdate.move(1, new Point(2, 2)));
+        assertEquals(List.of(clear, segment, move, newerMove), queue.closeAndTake(),
+                "the move before the clear is dropped as the oldest, not replaced");
+
+        queue = new OutboundQueue(CAPACITY, OverflowPolicy.COALESCE);
+        byte[] first = offer(queue, line(4, 1));
+        byte[] oldest = offer(queue, ShapeUpdate.move(5, new Point(1, 1)));
+        offer(queue, ShapeUpdate.move(3, new Point(1, 1)));
+        segment = offer(queue, StrokeSegment.end(2));
+        byte[] finished = offer(queue, line(3, 2));
+        assertEquals(List.of(first, oldest, segment, finished), queue.closeAndTake(),
+                "the finished shape drops the move of its preview, not the oldest move, and is queued last");
+    }
+
+    /**
+     * A full DROP_OLDEST queue drops the oldest move of a preview, never a finished shape or a segment.
+     */
+    @Test
+    public void dropOldest() {
+        OutboundQueue queue = new OutboundQueue(CAPACITY, OverflowPolicy.DROP_OLDEST);
+        byte[] shape = offer(queue, line(1, 1));
+        offer(queue, ShapeUpdate.move(2, new Point(1, 1)));
+        byte[] segment = offer(queue, StrokeSegment.end(3));
+        byte[] move = offer(queue, ShapeUpdate.move(2, new Point(2, 2)));
+
+        byte[] newer = offer(queue, line(1, 2));
+        assertEquals(List.of(shape, segment, move, newer), queue.closeAndTake(),
+                "only the oldest move is dropped, the newer shape is queued as well");
+    }
+
+    /**
+     * Frames that can't be dropped fill a DROP_OLDEST or COALESCE queue up to twice its capacity, after which the
+     * peer is to be disconnected.
+     */
+    @Test
+    public void growsToTwiceCapacity() {
+        for (OverflowPolicy policy : new OverflowPolicy[] {OverflowPolicy.DROP_OLDEST, OverflowPolicy.COALESCE}) {
+            OutboundQueue queue = new OutboundQueue(CAPACITY, policy);
+            for (int i = 0; i < CAPACITY * 2; i++) {
+                offer(queue, line(i, 1));
+            }
+            assertFalse(queue.offer(OutboundQueue.NO_KEY, encoder.encode(Constants.CLEAR)), policy.name());
+            assertEquals(CAPACITY * 2, queue.size());
+        }
+    }
+
+    /**
+     * A full DISCONNECT queue asks for the peer to be disconnected at once.
+     */
+    @Test
+    public void disconnect() {
+        OutboundQueue queue = new OutboundQueue(CAPACITY, OverflowPolicy.DISCONNECT);
+        for (int i = 0; i < CAPACITY; i++) {
+            offer(queue, ShapeUpdate.move(i, new Point(i, i)));
+        }
+        assertFalse(queue.offer(0, encoder.encode(ShapeUpdate.move(0, new Point(9, 9)))));
+        assertEquals(CAPACITY, queue.size());
+    }
+
+    /**
+     * Broadcasts are taken as one batch, followed by a mark with the sequence number of the last of them.
+     */
+    @Test
+    public void batchEndsWithSequenceMark() throws InterruptedException, StreamCorruptedException {
+        OutboundQueue queue = new OutboundQueue(CAPACITY, OverflowPolicy.DROP_OLDEST);
+        queue.offer(1, 5, encoder.encode(line(1, 1)));
+        queue.offer(2, 6, encoder.encode(line(2, 1)));
+        byte[] batch = queue.takeBatch(Constants.BATCH_MAX_FRAMES, Constants.BATCH_MAX_BYTES, 0);
+        List<Object> messages = assertInstanceOf(MessageBatch.class, new FrameDecoder().decode(batch)).getMessages();
+        assertEquals(3, messages.size());
+        assertEquals(2, assertInstanceOf(Shape.class, messages.get(1)).getId());
+        ResumePoint mark = assertInstanceOf(ResumePoint.class, messages.get(2));
+        assertTrue(mark.isMark());
+        assertEquals(6, mark.getSequence());
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * A closed queue accepts and drops new frames, hands out the frames still queued, and then ends.
+     */
+    @Test
+    public void close() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(CAPACITY, OverflowPolicy.DROP_OLDEST);
+        byte[] frame = offer(queue, Constants.CLEAR);
+        queue.close();
+        assertTrue(queue.offer(OutboundQueue.NO_KEY, encoder.encode(Constants.CLEAR)));
+        assertSame(frame, queue.takeBatch(Constants.BATCH_MAX_FRAMES, Constants.BATCH_MAX_BYTES, 0));
+        assertNull(queue.takeBatch(Constants.BATCH_MAX_FRAMES, Constants.BATCH_MAX_BYTES, 0));
+    }
+}
@@ -0,0 +1,180 @@
+package se.miun.dt176g.xxxxyyyy.reactive.tests;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.xxxxyyyy.reactive.ConnectionMetrics;
+import se.miun.dt176g.xxxxyyyy.reactive.OutboundQueue;
+import se.miun.dt176g.xxxxyyyy.reactive.Peer;
+import se.miun.dt176g.xxxxyyyy.reactive.ReplayBuffer;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>ReplayBufferTest</h1>
+ * Checks which frames a resuming client is sent, and that the ring drops its oldest frames by count and by size.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ReplayBufferTest {
+    private static final int ALICE = 1;
+    private static final int BOB = 2;
+
+    /**
+     * A peer that records what it is sent.
+     */
+    private static class RecordingPeer implements Peer {
+        final List<Long> keys = new ArrayList<>();
+        final List<Long> sequences = new ArrayList<>();
+        final List<byte[]> frames = new ArrayList<>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void send(long key, byte[] frame) {
+            send(key, OutboundQueue.NO_SEQUENCE, frame);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void send(long key, long sequence, byte[] frame) {
+            keys.add(key);
+            sequences.add(sequence);
+            frames.add(frame);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close(boolean drain) {}
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        /**
+         * Not used by the replay buffer.
+         * @return null.
+         */
+        @Override
+        public ConnectionMetrics getMetrics() {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a frame of a given size, filled with its number so frames can be told apart.
+     * @param number is the number of the frame.
+     * @param size is the size of the frame.
+     * @return the frame.
+     */
+    private static byte[] frame(int number, int size) {
+        byte[] frame = new byte[size];
+        Arrays.fill(frame, (byte) number);
+        return frame;
+    }
+
+    /**
+     * A client is sent the frames after the last one it got, in order, with their keys and sequence numbers.
+     */
+    @Test
+    public void resume() {
+        ReplayBuffer buffer = new ReplayBuffer(16, 1024);
+        assertEquals(OutboundQueue.NO_SEQUENCE, buffer.getLastSequence());
+        assertTrue(buffer.canResume(OutboundQueue.NO_SEQUENCE));
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, buffer.append(100 + i, ALICE, frame(i, 4)));
+        }
+        assertEquals(5, buffer.getLastSequence());
+        assertTrue(buffer.canResume(0));
+        assertTrue(buffer.canResume(5));
+        assertFalse(buffer.canResume(6), "a client can't be ahead of the room");
+
+        RecordingPeer peer = new RecordingPeer();
+        buffer.replay(2, Shape.NO_CLIENT, peer);
+        assertEquals(List.of(3L, 4L, 5L), peer.sequences);
+        assertEquals(List.of(103L, 104L, 105L), peer.keys);
+        assertArrayEquals(frame(3, 4), peer.frames.get(0));
+
+        RecordingPeer upToDate = new RecordingPeer();
+        buffer.replay(5, BOB, upToDate);
+        assertTrue(upToDate.frames.isEmpty());
+    }
+
+    /**
+     * A resuming client isn't sent back the frames it sent itself.
+     */
+    @Test
+    public void resumeSkipsOwnFrames() {
+        ReplayBuffer buffer = new ReplayBuffer(16, 1024);
+        buffer.append(1, ALICE, frame(1, 4));
+        buffer.append(2, BOB, frame(2, 4));
+        buffer.append(3, Shape.NO_CLIENT, frame(3, 4));
+        buffer.append(4, ALICE, frame(4, 4));
+
+        RecordingPeer alice = new RecordingPeer();
+        buffer.replay(0, ALICE, alice);
+        assertEquals(List.of(2L, 3L), alice.sequences);
+        RecordingPeer bob = new RecordingPeer();
+        buffer.replay(0, BOB, bob);
+        assertEquals(List.of(1L, 3L, 4L), bob.sequences);
+    }
+
+    /**
+     * Once the ring is full the oldest frames are dropped, and a client that missed them can't resume.
+     */
+    @Test
+    public void evictsByCount() {
+        ReplayBuffer buffer = new ReplayBuffer(4, 1024);
+        for (int i = 1; i <= 10; i++) {
+            buffer.append(i, ALICE, frame(i, 4));
+        }
+        assertFalse(buffer.canResume(5));
+        assertTrue(buffer.canResume(6));
+
+        RecordingPeer peer = new RecordingPeer();
+        buffer.replay(6, BOB, peer);
+        assertEquals(List.of(7L, 8L, 9L, 10L), peer.sequences);
+        assertArrayEquals(frame(7, 4), peer.frames.get(0));
+    }
+
+    /**
+     * Frames are dropped once their size passes the byte bound, but the latest frame is always held.
+     */
+    @Test
+    public void evictsBySize() {
+        ReplayBuffer buffer = new ReplayBuffer(100, 10);
+        buffer.append(1, ALICE, frame(1, 4));
+        buffer.append(2, ALICE, frame(2, 4));
+        assertTrue(buffer.canResume(0));
+        buffer.append(3, ALICE, frame(3, 4));
+        assertFalse(buffer.canResume(0));
+        assertTrue(buffer.canResume(1));
+
+        buffer.append(4, ALICE, frame(4, 64));
+        assertFalse(buffer.canResume(2));
+        assertTrue(buffer.canResume(3));
+        RecordingPeer peer = new RecordingPeer();
+        buffer.replay(3, BOB, peer);
+        assertEquals(List.of(4L), peer.sequences);
+
+        buffer.append(5, ALICE, frame(5, 4));
+        assertTrue(buffer.canResume(4), "the large frame is dropped once a newer frame is held");
+        assertFalse(buffer.canResume(3));
+    }
+}
@@ -0,0 +1,110 @@
+package se.miun.dt176g.xxxxyyyy.reactive.tests;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.ShapeIdMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>ShapeIdMapTest</h1>
+ * Checks the id map against a HashMap, in particular that removing an entry never hides the entries probed
+ * past it.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ShapeIdMapTest {
+
+    /**
+     * An id is added once, found and changed until it is removed, and absent after that.
+     */
+    @Test
+    public void putGetRemove() {
+        ShapeIdMap map = new ShapeIdMap();
+        long id = Shape.idOf(3, 7);
+        assertEquals(ShapeIdMap.ABSENT, map.get(id));
+        assertTrue(map.putIfAbsent(id, 0));
+        assertFalse(map.putIfAbsent(id, 1));
+        assertEquals(0, map.get(id));
+        assertEquals(1, map.size());
+        assertFalse(map.replace(id, 1, 3), "the ordinal isn't the expected one");
+        assertTrue(map.replace(id, 0, 3));
+        assertEquals(3, map.get(id));
+        assertFalse(map.replace(Shape.idOf(3, 8), 0, 3));
+
+
+        assertEquals(3, map.remove(id));
+        assertEquals(ShapeIdMap.ABSENT, map.get(id));
+        assertEquals(ShapeIdMap.ABSENT, map.remove(id));
+        assertEquals(0, map.size());
+        assertTrue(map.putIfAbsent(id, 2));
+        assertEquals(2, map.get(id));
+    }
+
+    /**
+     * Removing every other id of a full table leaves the rest findable, through all the resizes on the way.
+     */
+    @Test
+    public void removeKeepsProbeSequences() {
+        ShapeIdMap map = new ShapeIdMap();
+        List<Long> ids = new ArrayList<>();
+        for (int client = 1; client <= 4; client++) {
+            for (int sequence = 1; sequence <= 25_000; sequence++) {
+                ids.add(Shape.idOf(client, sequence));
+            }
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            assertTrue(map.putIfAbsent(ids.get(i), i));
+        }
+        for (int i = 0; i < ids.size(); i += 2) {
+            assertEquals(i, map.remove(ids.get(i)));
+        }
+        assertEquals(ids.size() / 2, map.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i % 2 == 0 ? ShapeIdMap.ABSENT : i, map.get(ids.get(i)), "id " + ids.get(i));
+        }
+        for (int i = 0; i < ids.size(); i += 2) {
+            assertTrue(map.putIfAbsent(ids.get(i), i + ids.size()));
+        }
+        assertEquals(ids.size(), map.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i % 2 == 0 ? i + ids.size() : i, map.get(ids.get(i)));
+        }
+    }
+
+    /**
+     * Random adds and removes over a small set of ids, so probe sequences keep colliding, match a HashMap.
+     */
+    @Test
+    public void matchesHashMap() {
+        ShapeIdMap map = new ShapeIdMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 500_000; i++) {
+            long id = Shape.idOf(random.nextInt(4), random.nextInt(2_000));
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(id);
+                assertEquals(removed != null ? removed : ShapeIdMap.ABSENT, map.remove(id));
+            } else {
+                boolean absent = !expected.containsKey(id);
+                assertEquals(absent, map.putIfAbsent(id, i));
+                if (absent) {
+                    expected.put(id, i);
+                }
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+        }
+    }
+}
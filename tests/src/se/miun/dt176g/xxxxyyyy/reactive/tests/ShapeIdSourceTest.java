@@ -0,0 +1,47 @@
+package se.miun.dt176g.xxxxyyyy.reactive.tests;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.ShapeIdSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * <h1>ShapeIdSourceTest</h1>
+ * Checks that ids are only handed out with a client id, and counted per source and client id.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class ShapeIdSourceTest {
+
+    /**
+     * No id is handed out before the room has handed out a client id.
+     */
+    @Test
+    public void noClientId() {
+        ShapeIdSource ids = new ShapeIdSource();
+        assertFalse(ids.hasNext());
+        assertThrows(IllegalStateException.class, ids::next);
+    }
+
+    /**
+     * Sources are independent of each other, and count from the start with each new client id.
+     */
+    @Test
+    public void countsPerClientId() {
+        ShapeIdSource alice = new ShapeIdSource();
+        ShapeIdSource bob = new ShapeIdSource();
+        alice.setClientId(1);
+        bob.setClientId(2);
+        assertEquals(Shape.idOf(1, 1), alice.next());
+        assertEquals(Shape.idOf(1, 2), alice.next());
+        assertEquals(Shape.idOf(2, 1), bob.next());
+
+        alice.setClientId(3);
+        assertEquals(3, alice.getClientId());
+        assertEquals(Shape.idOf(3, 1), alice.next());
+    }
+}
@@ -0,0 +1,147 @@
+package se.miun.dt176g.xxxxyyyy.reactive.tests;
+
+import org.junit.jupiter.api.Test;
+import se.miun.dt176g.xxxxyyyy.reactive.FreehandShape;
+import se.miun.dt176g.xxxxyyyy.reactive.LineShape;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.ShapeUpdate;
+import se.miun.dt176g.xxxxyyyy.reactive.SnapshotChunk;
+import se.miun.dt176g.xxxxyyyy.reactive.SnapshotCodec;
+import se.miun.dt176g.xxxxyyyy.reactive.StrokeSegment;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>SnapshotCodecTest</h1>
+ * Checks that a snapshot split into chunks is decoded back into the messages it was made of.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class SnapshotCodecTest {
+
+    /**
+     * Concatenates the data of the chunks of a snapshot, as a client does before decoding it.
+     * @param chunks are the chunks.
+     * @return the data of all chunks.
+     */
+    private static byte[] join(List<SnapshotChunk> chunks) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (SnapshotChunk chunk : chunks) {
+            data.writeBytes(chunk.getData());
+        }
+        return data.toByteArray();
+    }
+
+    /**
+     * An empty drawing is still one chunk, marked as last.
+     */
+    @Test
+    public void empty() throws IOException {
+        List<SnapshotChunk> chunks = SnapshotCodec.encode(List.of());
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0).isLast());
+        assertTrue(SnapshotCodec.decode(join(chunks)).isEmpty());
+    }
+
+    /**
+     * Finished shapes, open strokes and open previews come back in order, spread over several chunks.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        Random random = new Random(1);
+        List<Object> messages = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            if (i % 10 == 0) {
+                FreehandShape stroke = new FreehandShape(new Color(random.nextInt()), 1 + random.nextInt(10));
+                for (int point = 0; point < 20; point++) {
+                    stroke.addPoint(random.nextInt(2000), random.nextInt(2000));
+                }
+                stroke.setId(Shape.idOf(1, i));
+                messages.add(i % 20 == 0 ? stroke : StrokeSegment.begin(stroke));
+            } else {
+                LineShape line = new LineShape(new Color(random.nextInt()), 1 + random.nextInt(10));
+                line.setStartPoint(new Point(random.nextInt(2000), random.nextInt(2000)));
+                line.setEndPoint(new Point(random.nextInt(2000), random.nextInt(2000)));
+                line.setId(Shape.idOf(1, i));
+                messages.add(i % 7 == 0 ? ShapeUpdate.begin(line) : line);
+            }
+        }
+
+        List<SnapshotChunk> chunks = SnapshotCodec.encode(messages);
+        assertTrue(chunks.size() > 1, "the snapshot should need more than one chunk");
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(i == chunks.size() - 1, chunks.get(i).isLast());
+        }
+
+        List<Object> decoded = SnapshotCodec.decode(join(chunks));
+        assertEquals(messages.size(), decoded.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Object message = messages.get(i);
+            if (message instanceof FreehandShape) {
+                FreehandShape stroke = (FreehandShape) message;
+                FreehandShape copy = assertInstanceOf(FreehandShape.class, decoded.get(i));
+                assertEquals(stroke.getId(), copy.getId());
+                assertEquals(stroke.getPointCount(), copy.getPointCount());
+                assertEquals(stroke.getX(19), copy.getX(19));
+            } else if (message instanceof StrokeSegment) {
+                StrokeSegment segment = (StrokeSegment) message;
+                StrokeSegment copy = assertInstanceOf(StrokeSegment.class, decoded.get(i));
+                assertEquals(segment.getShapeId(), copy.getShapeId());
+                assertEquals(segment.getColor(), copy.getColor());
+                assertArrayEquals(segment.getPoints(), copy.getPoints());
+            } else if (message instanceof ShapeUpdate) {
+                ShapeUpdate update = (ShapeUpdate) message;
+                ShapeUpdate copy = assertInstanceOf(ShapeUpdate.class, decoded.get(i));
+                assertEquals(update.getShapeId(), copy.getShapeId());
+                assertEquals(((LineShape) update.getShape()).getEndPoint(),
+                        assertInstanceOf(LineShape.class, copy.getShape()).getEndPoint());
+            } else {
+                LineShape line = (LineShape) message;
+                LineShape copy = assertInstanceOf(LineShape.class, decoded.get(i));
+                assertEquals(line.getId(), copy.getId());
+                assertEquals(line.getColor(), copy.getColor());
+                assertEquals(line.getStartPoint(), copy.getStartPoint());
+                assertEquals(line.getEndPoint(), copy.getEndPoint());
+            }
+        }
+    }
+
+    /**
+     * A snapshot missing its last chunk, or with corrupted data, is rejected.
+     */
+    @Test
+    public void malformed() {
+        List<Shape> shapes = new ArrayList<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 50_000; i++) {
+            LineShape line = new LineShape(new Color(random.nextInt()), 2);
+            line.setStartPoint(new Point(random.nextInt(), random.nextInt()));
+            line.setEndPoint(new Point(random.nextInt(), random.nextInt()));
+            shapes.add(line);
+        }
+        List<SnapshotChunk> chunks = SnapshotCodec.encode(shapes);
+        assertFalse(chunks.get(0).isLast());
+        assertThrows(StreamCorruptedException.class,
+                () -> SnapshotCodec.decode(join(chunks.subList(0, chunks.size() - 1))));
+
+        byte[] corrupted = Arrays.copyOf(chunks.get(0).getData(), 64);
+        Arrays.fill(corrupted, 2, corrupted.length, (byte) 0xFF);
+        assertThrows(StreamCorruptedException.class, () -> SnapshotCodec.decode(corrupted));
+    }
+}
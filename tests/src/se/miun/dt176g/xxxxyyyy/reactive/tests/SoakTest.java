@@ -0,0 +1,275 @@
+package se.miun.dt176g.xxxxyyyy.reactive.tests;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameDecoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameEncoder;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameInputStream;
+import se.miun.dt176g.xxxxyyyy.reactive.FrameOutputStream;
+import se.miun.dt176g.xxxxyyyy.reactive.FreehandShape;
+import se.miun.dt176g.xxxxyyyy.reactive.JoinRoom;
+import se.miun.dt176g.xxxxyyyy.reactive.LineShape;
+import se.miun.dt176g.xxxxyyyy.reactive.MessageBatch;
+import se.miun.dt176g.xxxxyyyy.reactive.OverflowPolicy;
+import se.miun.dt176g.xxxxyyyy.reactive.ResumePoint;
+import se.miun.dt176g.xxxxyyyy.reactive.Server;
+import se.miun.dt176g.xxxxyyyy.reactive.Shape;
+import se.miun.dt176g.xxxxyyyy.reactive.ShapeUpdate;
+import se.miun.dt176g.xxxxyyyy.reactive.StrokeSegment;
+import se.miun.dt176g.xxxxyyyy.reactive.support.Constants;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>SoakTest</h1>
+ * Runs a headless server while one client keeps drawing and clearing and another client receives it all, and
+ * checks that the heap of the process stays flat once the bounded buffers have filled up. Every round holds
+ * the same work, so anything kept per message, per shape or per round shows up as growth.
+ * The number of rounds is set with the system property reactive.soakRounds. The server listens on any free port,
+ * and the system properties set for it are restored afterwards.
+ * @author 	Emma Pesjak
+ * @version 1.0
+ * @since 	2023-10-06
+ */
+public class SoakTest {
+    private static final String ROUNDS_PROPERTY = "reactive.soakRounds";
+    private static final int ROUNDS = 200;
+    private static final int WARM_UP_ROUNDS = 30; // Enough to fill the replay buffer.
+    // Fewer frames than an outbound queue holds, so the watcher is never disconnected for falling behind.
+    private static final int SHAPES_PER_ROUND = 500;
+    private static final long ALLOWED_GROWTH_BYTES = 2 * 1024 * 1024;
+    private static final long ROUND_TIMEOUT_S = 30;
+
+    @TempDir
+    Path directory;
+    private final Map<String, String> savedProperties = new HashMap<>(); // The values before the test, or null.
+
+    /**
+     * A client without a GUI, whose reader thread counts the clears it receives.
+     */
+    private static class SoakClient implements AutoCloseable {
+        private final FrameEncoder encoder = new FrameEncoder();
+        private final Socket socket;
+        private final FrameOutputStream out;
+        private final Semaphore clears = new Semaphore(0);
+        private final CountDownLatch joined = new CountDownLatch(1);
+        private volatile int clientId = Shape.NO_CLIENT;
+        private int sequence = 0;
+
+        /**
+         * Constructor which connects, joins the default room and starts reading.
+         * @param port is the port of the server.
+         * @throws IOException if the server can't be reached.
+         */
+        SoakClient(int port) throws IOException {
+            socket = connect(port);
+            out = new FrameOutputStream(socket.getOutputStream());
+            send(new JoinRoom(Constants.DEFAULT_ROOM));
+            out.flush();
+            Thread reader = new Thread(this::read, "soak-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /**
+         * Connects to the server, waiting for it to start accepting.
+         * @param port is the port of the server.
+         * @return the socket.
+         * @throws IOException if the server doesn't start accepting.
+         */
+        private static Socket connect(int port) throws IOException {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    return new Socket(Constants.ADDRESS, port);
+                } catch (ConnectException e) {
+                    if (attempt == 50) {
+                        throw e;
+                    }
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reader loop, counting the clears and noting the client id handed out when joining.
+         */
+        private void read() {
+            FrameDecoder decoder = new FrameDecoder();
+            try {
+                FrameInputStream in = new FrameInputStream(socket.getInputStream());
+                while (true) {
+                    Object message = decoder.decode(in.readFrame());
+                    List<Object> messages = message instanceof MessageBatch
+                            ? ((MessageBatch) message).getMessages() : Collections.singletonList(message);
+                    for (Object received : messages) {
+                        if (received instanceof ResumePoint && !((ResumePoint) received).isMark()) {
+                            clientId = ((ResumePoint) received).getClientId();
+                            joined.countDown();
+                        } else if (Constants.CLEAR.equals(received)) {
+                            clears.release();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // The socket was closed.
+            }
+        }
+
+        /**
+         * Waits until the room has been joined.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        void awaitJoined() throws InterruptedException {
+            assertTrue(joined.await(ROUND_TIMEOUT_S, TimeUnit.SECONDS), "the room was never joined");
+        }
+
+        /**
+         * Draws a round, previews and strokes as well as finished lines, and clears the drawing.
+         * @throws IOException if the connection fails.
+         */
+        void drawRound() throws IOException {
+            for (int i = 0; i < SHAPES_PER_ROUND; i++) {
+                long id = Shape.idOf(clientId, ++sequence);
+                if (i % 10 == 0) {
+                    FreehandShape stroke = new FreehandShape(Color.RED, 2);
+                    stroke.addPoint(i % 500, i % 300);
+                    stroke.setId(id);
+                    send(StrokeSegment.begin(stroke));
+                    send(StrokeSegment.append(id, new int[] {i % 400, i % 200, i % 300, i % 100}, 2));
+                    send(StrokeSegment.end(id));
+                } else {
+                    LineShape line = new LineShape(Color.BLUE, 1 + i % 5);
+                    line.setStartPoint(new Point(i % 640, i % 480));
+                    line.setEndPoint(new Point(i % 320, i % 240));
+                    line.setId(id);
+                    if (i % 10 == 1) {
+                        send(ShapeUpdate.begin(line));
+                        send(ShapeUpdate.move(id, new Point(i % 100, i % 100)));
+                    }
+                    send(line);
+                }
+            }
+            send(Constants.CLEAR);
+            out.flush();
+        }
+
+        /**
+         * Waits for the next clear to arrive.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        void awaitClear() throws InterruptedException {
+            assertTrue(clears.tryAcquire(ROUND_TIMEOUT_S, TimeUnit.SECONDS), "a clear never arrived");
+        }
+
+        /**
+         * Writes a message to the server.
+         * @param message is the message.
+         * @throws IOException if the connection fails.
+         */
+        private void send(Object message) throws IOException {
+            out.writeFrame(encoder.encode(message));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Sets a system property for the test, keeping the value it had so it can be restored.
+     * @param name is the name of the property.
+     * @param value is the value.
+     */
+    private void setProperty(String name, String value) {
+        if (!savedProperties.containsKey(name)) {
+            savedProperties.put(name, System.getProperty(name));
+        }
+        System.setProperty(name, value);
+    }
+
+    /**
+     * Restores the system properties set for the test, so they don't leak into the tests run after it.
+     */
+    @AfterEach
+    public void restoreProperties() {
+        savedProperties.forEach((name, value) -> {
+            if (value == null) {
+                System.clearProperty(name);
+            } else {
+                System.setProperty(name, value);
+            }
+        });
+        savedProperties.clear();
+    }
+
+    /**
+     * Measures the heap in use after collecting garbage, the smallest of a few measurements.
+     * @return the bytes in use.
+     * @throws InterruptedException if interrupted while waiting for the collector.
+     */
+    private static long usedHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    /**
+     * The heap after the last round is about what it was after the warm-up rounds.
+     */
+    @Test
+    public void heapStaysFlat() throws Exception {
+        setProperty(Constants.JOURNAL_PROPERTY, directory.resolve(Constants.JOURNAL_FILE).toString());
+        setProperty(Constants.ROOM_DIRECTORY_PROPERTY, directory.resolve(Constants.ROOM_DIRECTORY).toString());
+        setProperty(Constants.PORT_PROPERTY, "0");
+        int rounds = Math.max(WARM_UP_ROUNDS + 1, Integer.getInteger(ROUNDS_PROPERTY, ROUNDS));
+        Server server = new Server(OverflowPolicy.DROP_OLDEST, Constants.OUTBOUND_QUEUE_CAPACITY, true);
+        server.startServer();
+        int port = server.getPort();
+        try (SoakClient drawer = new SoakClient(port); SoakClient watcher = new SoakClient(port)) {
+            drawer.awaitJoined();
+            watcher.awaitJoined();
+            long warmHeap = 0;
+            for (int round = 1; round <= rounds; round++) {
+                drawer.drawRound();
+                watcher.awaitClear();
+                if (round == WARM_UP_ROUNDS) {
+                    warmHeap = usedHeap();
+                }
+            }
+            long growth = usedHeap() - warmHeap;
+            assertTrue(growth < ALLOWED_GROWTH_BYTES, "the heap grew by " + growth + " bytes over "
+                    + (rounds - WARM_UP_ROUNDS) + " rounds");
+        } finally {
+            server.shutDown();
+        }
+    }
+}